@@ -0,0 +1,164 @@
+package com.zhangls.paging.listview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.ListView;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 模拟在10k项的列表上滚动，视图被回收后重新绑定到新的位置，验证稳定状态下getView不分配任何对象。
+ * 加载更多保持开启（数据已全部加载），列表项图片经由{@link ImagePipeline}从内存缓存显示。
+ */
+public class GetViewAllocationTest extends AndroidTestCase {
+    private static final int ITEM_COUNT = 10000;
+    private static final int VISIBLE_ROWS = 10;
+    private static final int IMAGE_SIZE = 100;
+
+    @SuppressWarnings("deprecation")
+    public void testRecycledBindAllocatesNothing() {
+        ImagePipeline pipeline = new ImagePipeline(getContext(), 4 * 1024 * 1024,
+                new File(getContext().getCacheDir(), "allocation_test_images"), 1024 * 1024, 1, 1, null);
+        for (int i = 0; i < VISIBLE_ROWS; i++) {
+            pipeline.putMemoryCache(RowAdapter.URLS[i], IMAGE_SIZE, IMAGE_SIZE,
+                    Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888));
+        }
+        RowAdapter adapter = new RowAdapter(getContext());
+        adapter.setImagePipeline(pipeline);
+        List<Integer> items = new ArrayList<Integer>(ITEM_COUNT);
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            items.add(i);
+        }
+        // 少于一页的数据表示没有更多，加载更多仍然开启，getView每次都会经过加载状态的判断
+        adapter.setData(items);
+        adapter.setMoreEnabled(true);
+        adapter.notifyDataSetChanged();
+        assertFalse(adapter.hasMore());
+        assertEquals(ITEM_COUNT, adapter.getCount());
+
+        ListView parent = new ListView(getContext());
+        View[] screen = new View[VISIBLE_ROWS];
+        // 第一屏创建holder，之后的行都复用滑出屏幕的视图
+        final int warmUp = VISIBLE_ROWS * 2;
+        scroll(adapter, parent, screen, 0, warmUp);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        scroll(adapter, parent, screen, warmUp, ITEM_COUNT);
+        Debug.stopAllocCounting();
+        final int allocations = Debug.getThreadAllocCount();
+
+        assertEquals(VISIBLE_ROWS, adapter.mCreatedCount);
+        assertEquals(ITEM_COUNT, adapter.mBindCount);
+        assertEquals("allocations while binding " + (ITEM_COUNT - warmUp) + " rows", 0, allocations);
+        adapter.release();
+    }
+
+    private static void scroll(RowAdapter adapter, ListView parent, View[] screen, int from, int to) {
+        for (int position = from; position < to; position++) {
+            final int slot = position % screen.length;
+            View convertView = screen[slot];
+            if (null != convertView) {
+                // 顶部的行滑出屏幕，进入回收堆
+                adapter.onMovedToScrapHeap(convertView);
+            }
+            adapter.getItemViewType(position);
+            screen[slot] = adapter.getView(position, convertView, parent);
+        }
+    }
+
+    private static class RowAdapter extends BaseListAdapter<Integer> {
+        /**
+         * 回收的视图重新绑定到相同位置序号的图片，如头像等重复出现的图片
+         */
+        static final String[] URLS = new String[VISIBLE_ROWS];
+
+        static {
+            for (int i = 0; i < VISIBLE_ROWS; i++) {
+                URLS[i] = "http://example.com/image/" + i + ".png";
+            }
+        }
+
+        int mCreatedCount;
+        int mBindCount;
+
+        RowAdapter(Context context) {
+            super(context);
+        }
+
+        @Override
+        public int getIncrement() {
+            return ITEM_COUNT + 1;
+        }
+
+        @Override
+        protected Object getItemKey(Integer item) {
+            return item;
+        }
+
+        @Override
+        protected ImageItem getHolder(int position, ImageItem convertHolder) {
+            RowHolder holder = (RowHolder) convertHolder;
+            if (null == holder) {
+                ImageView imageView = new ImageView(getContext());
+                imageView.setLayoutParams(new ViewGroup.LayoutParams(IMAGE_SIZE, IMAGE_SIZE));
+                holder = new RowHolder(imageView);
+                mCreatedCount++;
+            }
+            holder.mPosition = position;
+            holder.mUrl = URLS[position % URLS.length];
+            mBindCount++;
+            return holder;
+        }
+
+        @Override
+        protected List<Integer> getMoreData(List<Integer> out, int startPosition, int requestSize) {
+            return out;
+        }
+    }
+
+    private static class RowHolder implements UrlImageItem {
+        private final ImageView mRootView;
+        int mPosition;
+        String mUrl;
+
+        RowHolder(ImageView rootView) {
+            mRootView = rootView;
+        }
+
+        @Override
+        public int getImageCount() {
+            return 1;
+        }
+
+        @Override
+        public String getImageUrl(int index) {
+            return mUrl;
+        }
+
+        @Override
+        public ImageView getImageView(int index) {
+            return mRootView;
+        }
+
+        @Override
+        public void loadImages() {
+        }
+
+        @Override
+        public void cancelLoadImages() {
+        }
+
+        @Override
+        public View getRootView() {
+            return mRootView;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.zhangls.paging.listview;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对比逐项比较与键索引两种去重方式追加一页数据的耗时
+ */
+public class ItemDuplicateBenchmark extends AndroidTestCase {
+    private static final String TAG = ItemDuplicateBenchmark.class.getSimpleName();
+    private static final int PAGE_SIZE = AsyncLoadingAdapter.DEFAULT_INCREMENT;
+    private static final int ROUNDS = 5;
+
+    public void testAppendPage1k() {
+        benchmark(1000);
+    }
+
+    public void testAppendPage10k() {
+        benchmark(10000);
+    }
+
+    public void testAppendPage100k() {
+        benchmark(100000);
+    }
+
+    private void benchmark(int size) {
+        long scanNanos = appendPage(new IntAdapter(getContext(), false), size);
+        long keyNanos = appendPage(new IntAdapter(getContext(), true), size);
+        Log.i(TAG, size + " items: scan " + scanNanos / 1000 + "us, key " + keyNanos / 1000 + "us per page");
+    }
+
+    /**
+     * 预置size项后追加一页（半数重复），返回每页平均耗时（纳秒）
+     */
+    private long appendPage(IntAdapter adapter, int size) {
+        List<Integer> items = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(i);
+        }
+        if (adapter.mKeyed) {
+            adapter.appendData(items);
+        } else {
+            // 逐项比较方式预置数据本身就是O(n^2)，直接填充
+            adapter.getData().addAll(items);
+        }
+        assertEquals(size, adapter.getItemCount());
+
+        long total = 0;
+        int next = size;
+        for (int round = 0; round < ROUNDS; round++) {
+            List<Integer> page = new ArrayList<Integer>(PAGE_SIZE);
+            for (int i = 0; i < PAGE_SIZE / 2; i++) {
+                page.add(next++);
+                page.add(i);
+            }
+            long start = System.nanoTime();
+            int added = adapter.appendData(page);
+            total += System.nanoTime() - start;
+            assertEquals(PAGE_SIZE / 2, added);
+        }
+        return total / ROUNDS;
+    }
+
+    private static class IntAdapter extends BaseListAdapter<Integer> {
+        private final boolean mKeyed;
+
+        IntAdapter(Context context, boolean keyed) {
+            super(context);
+            mKeyed = keyed;
+        }
+
+        @Override
+        protected Object getItemKey(Integer item) {
+            return mKeyed ? item : null;
+        }
+
+        @Override
+        public boolean isItemDuplicate(Integer item1, Integer item2) {
+            return item1.equals(item2);
+        }
+
+        @Override
+        protected List<Integer> getMoreData(List<Integer> out, int startPosition, int requestSize) {
+            return out;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.zhangls.paging.listview;
+
+import android.test.AndroidTestCase;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个线程同时发起、完成、刷新、阻塞加载，验证{@link LoadStateMachine}不会重复计入或丢失页
+ */
+public class LoadStateMachineTest extends AndroidTestCase {
+    private static final int TRIGGER_THREADS = 4;
+    private static final int COMPLETE_THREADS = 2;
+    private static final int TRIGGERS_PER_THREAD = 50000;
+    private static final int RESETS = 2000;
+    private static final int MAX_IN_FLIGHT = 3;
+
+    public void testConcurrentTriggerCompleteRefresh() throws Exception {
+        final LoadStateMachine machine = new LoadStateMachine();
+        final Queue<Integer> tickets = new ConcurrentLinkedQueue<Integer>();
+        final ConcurrentHashMap<Integer, AtomicInteger> begun = new ConcurrentHashMap<Integer, AtomicInteger>();
+        final ConcurrentHashMap<Integer, AtomicInteger> finished = new ConcurrentHashMap<Integer, AtomicInteger>();
+        final AtomicBoolean overflow = new AtomicBoolean();
+        final AtomicBoolean triggersDone = new AtomicBoolean();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch triggersLatch = new CountDownLatch(TRIGGER_THREADS);
+        final CountDownLatch othersLatch = new CountDownLatch(COMPLETE_THREADS + 1);
+
+        for (int t = 0; t < TRIGGER_THREADS; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < TRIGGERS_PER_THREAD; i++) {
+                        final int epoch = machine.tryBegin(MAX_IN_FLIGHT);
+                        if (epoch >= 0) {
+                            if (LoadStateMachine.inFlightOf(machine.get()) > MAX_IN_FLIGHT) {
+                                overflow.set(true);
+                            }
+                            counter(begun, epoch).incrementAndGet();
+                            tickets.add(epoch);
+                        }
+                    }
+                    triggersLatch.countDown();
+                }
+            }).start();
+        }
+        for (int t = 0; t < COMPLETE_THREADS; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    int n = 0;
+                    while (true) {
+                        Integer epoch = tickets.poll();
+                        if (null == epoch) {
+                            if (triggersDone.get() && tickets.isEmpty()) {
+                                break;
+                            }
+                            Thread.yield();
+                            continue;
+                        }
+                        n++;
+                        final boolean counted;
+                        if (0 == n % 97) {
+                            counted = machine.fail(epoch);
+                        } else if (0 == n % 13) {
+                            counted = machine.abort(epoch);
+                        } else {
+                            counted = machine.complete(epoch);
+                        }
+                        if (counted) {
+                            counter(finished, epoch).incrementAndGet();
+                        }
+                    }
+                    othersLatch.countDown();
+                }
+            }).start();
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                await(start);
+                for (int i = 0; i < RESETS; i++) {
+                    switch (i % 4) {
+                        case 0:
+                            machine.reset();
+                            break;
+                        case 1:
+                            machine.block();
+                            break;
+                        case 2:
+                            machine.unblock();
+                            break;
+                        default:
+                            machine.setExhausted(0 == i % 8);
+                            machine.setExhausted(false);
+                            break;
+                    }
+                    Thread.yield();
+                }
+                machine.unblock();
+                othersLatch.countDown();
+            }
+        }).start();
+
+        start.countDown();
+        triggersLatch.await();
+        triggersDone.set(true);
+        othersLatch.await();
+
+        assertFalse("more pages in flight than allowed", overflow.get());
+        for (Integer epoch : finished.keySet()) {
+            assertTrue("page finished twice in epoch " + epoch,
+                    finished.get(epoch).get() <= counter(begun, epoch).get());
+        }
+        // 最后一代的页全部结束后，没有遗留或丢失的页
+        final int epoch = machine.getEpoch();
+        assertEquals(counter(begun, epoch).get(), counter(finished, epoch).get());
+        assertEquals(0, machine.getInFlight());
+        assertTrue(LoadStateMachine.STATE_LOADING != machine.getState());
+    }
+
+    public void testBlockedTriggerIsReplayedOnUnblock() {
+        LoadStateMachine machine = new LoadStateMachine();
+        machine.block();
+        assertFalse(machine.unblock());
+        machine.block();
+        assertEquals(-1, machine.tryBegin(1));
+        assertTrue(machine.unblock());
+        assertFalse(machine.unblock());
+
+        final int epoch = machine.tryBegin(1);
+        assertTrue(epoch >= 0);
+        assertEquals(-1, machine.tryBegin(1));
+        assertTrue(machine.fail(epoch));
+        assertEquals(LoadStateMachine.STATE_FAILED, machine.getState());
+        assertEquals(-1, machine.tryBegin(1));
+        assertTrue(machine.unblock());
+        assertEquals(LoadStateMachine.STATE_IDLE, machine.getState());
+    }
+
+    public void testResetDropsStaleCompletions() {
+        LoadStateMachine machine = new LoadStateMachine();
+        final int epoch = machine.tryBegin(2);
+        assertEquals(1, machine.getInFlight());
+        machine.setExhausted(true);
+        assertEquals(-1, machine.tryBegin(2));
+        final int next = machine.reset();
+        assertTrue(next != epoch);
+        assertEquals(0, machine.getInFlight());
+        assertFalse(machine.complete(epoch));
+        assertTrue(machine.isExhausted());
+        machine.setExhausted(false);
+        machine.setEnabled(false);
+        assertEquals(-1, machine.tryBegin(2));
+        machine.setEnabled(true);
+        assertEquals(next, machine.tryBegin(2));
+    }
+
+    public void testExhaustedKeepsBlockedAndFailed() {
+        LoadStateMachine machine = new LoadStateMachine();
+        machine.setExhausted(true);
+        machine.block();
+        assertEquals(LoadStateMachine.STATE_BLOCKED, machine.getState());
+        machine.setExhausted(false);
+        assertEquals(LoadStateMachine.STATE_BLOCKED, machine.getState());
+        assertEquals(-1, machine.tryBegin(1));
+        assertTrue(machine.unblock());
+
+        final int epoch = machine.tryBegin(1);
+        assertTrue(machine.fail(epoch));
+        machine.setExhausted(true);
+        machine.setExhausted(false);
+        assertEquals(LoadStateMachine.STATE_FAILED, machine.getState());
+        assertEquals(-1, machine.tryBegin(1));
+
+        // 取消加载（如setData）清除失败状态和失败期间的请求
+        machine.reset();
+        assertEquals(LoadStateMachine.STATE_IDLE, machine.getState());
+        assertFalse(machine.unblock());
+        assertTrue(machine.tryBegin(1) >= 0);
+    }
+
+    private static AtomicInteger counter(ConcurrentHashMap<Integer, AtomicInteger> counters, int epoch) {
+        AtomicInteger counter = counters.get(epoch);
+        if (null == counter) {
+            AtomicInteger created = new AtomicInteger();
+            counter = counters.putIfAbsent(epoch, created);
+            if (null == counter) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.zhangls.paging.listview;
+
+import android.test.AndroidTestCase;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多个线程同时请求同一查询的分页，验证{@link RequestCoalescer}合并相同和相邻的请求、传递没有更多，
+ * 执行请求的线程被取消时并入的请求重新发起
+ */
+public class RequestCoalescerTest extends AndroidTestCase {
+    private static final String QUERY = "q";
+    private static final int PAGE_SIZE = 20;
+    private static final long FETCH_MILLIS = 300;
+
+    public void testIdenticalRequestJoinsRunningFetch() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        SourceFetcher fetcher = new SourceFetcher(Integer.MAX_VALUE, FETCH_MILLIS, null);
+        Requester first = new Requester(coalescer, 0, PAGE_SIZE, fetcher);
+        Requester second = new Requester(coalescer, 0, PAGE_SIZE, fetcher);
+        first.start();
+        Thread.sleep(50);
+        second.start();
+        first.join();
+        second.join();
+
+        assertEquals(1, fetcher.mCalls.get());
+        assertEquals(2, coalescer.getRequestCount());
+        assertEquals(1, coalescer.getExecuteCount());
+        assertEquals(PAGE_SIZE, first.mPage.getItems().size());
+        assertEquals(PAGE_SIZE, second.mPage.getItems().size());
+    }
+
+    public void testAdjacentRequestsMergeAndKeepEndOfData() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        coalescer.setBatchWindow(200);
+        // 数据源只有30项，合并后的请求返回不足一页并设置没有更多
+        SourceFetcher fetcher = new SourceFetcher(30, FETCH_MILLIS, null);
+        // 另一个请求在进行，后续请求才会等待窗口
+        Requester other = new Requester(coalescer, 100, PAGE_SIZE, fetcher);
+        other.start();
+        Thread.sleep(50);
+        Requester first = new Requester(coalescer, 0, PAGE_SIZE, fetcher);
+        Requester second = new Requester(coalescer, PAGE_SIZE, PAGE_SIZE, fetcher);
+        first.start();
+        Thread.sleep(50);
+        second.start();
+        other.join();
+        first.join();
+        second.join();
+
+        assertEquals(2, fetcher.mCalls.get());
+        assertEquals(3, coalescer.getRequestCount());
+        assertEquals(2, coalescer.getExecuteCount());
+        assertEquals(PAGE_SIZE, first.mPage.getItems().size());
+        assertEquals(Integer.valueOf(0), first.mPage.getItems().get(0));
+        assertFalse(first.mPage.isEndOfData());
+        assertEquals(10, second.mPage.getItems().size());
+        assertEquals(Integer.valueOf(PAGE_SIZE), second.mPage.getItems().get(0));
+        assertTrue(second.mPage.isEndOfData());
+    }
+
+    public void testFollowerRetriesWhenLeaderIsCancelled() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        final CountDownLatch leaderFetching = new CountDownLatch(1);
+        SourceFetcher fetcher = new SourceFetcher(Integer.MAX_VALUE, FETCH_MILLIS, leaderFetching);
+        Requester leader = new Requester(coalescer, 0, PAGE_SIZE, fetcher);
+        Requester follower = new Requester(coalescer, 0, PAGE_SIZE, fetcher);
+        leader.start();
+        leaderFetching.await();
+        follower.start();
+        Thread.sleep(50);
+        leader.interrupt();
+        leader.join();
+        follower.join();
+
+        assertTrue(leader.mError instanceof InterruptedIOException);
+        assertNull(follower.mError);
+        assertEquals(PAGE_SIZE, follower.mPage.getItems().size());
+        assertEquals(2, fetcher.mCalls.get());
+    }
+
+    private static class SourceFetcher implements RequestCoalescer.RangeFetcher<Integer> {
+        private final int mTotal;
+        private final long mDelay;
+        /**
+         * 不为空时第一次请求开始后计数，并在被中断时失败
+         */
+        private final CountDownLatch mFirstFetching;
+        final AtomicInteger mCalls = new AtomicInteger();
+
+        SourceFetcher(int total, long delay, CountDownLatch firstFetching) {
+            mTotal = total;
+            mDelay = delay;
+            mFirstFetching = firstFetching;
+        }
+
+        @Override
+        public List<Integer> fetch(Page<Integer> range) throws Exception {
+            if (1 == mCalls.incrementAndGet() && null != mFirstFetching) {
+                mFirstFetching.countDown();
+            }
+            try {
+                Thread.sleep(mDelay);
+            } catch (InterruptedException e) {
+                InterruptedIOException ie = new InterruptedIOException();
+                ie.initCause(e);
+                throw ie;
+            }
+            final int end = (int) Math.min((long) range.getStartPosition() + range.getRequestSize(), mTotal);
+            List<Integer> items = new ArrayList<Integer>();
+            for (int i = range.getStartPosition(); i < end; i++) {
+                items.add(i);
+            }
+            range.setEndOfData(end == mTotal);
+            return items;
+        }
+    }
+
+    private static class Requester extends Thread {
+        private final RequestCoalescer mCoalescer;
+        private final SourceFetcher mFetcher;
+        final Page<Integer> mPage;
+        volatile Exception mError;
+
+        Requester(RequestCoalescer coalescer, int startPosition, int requestSize, SourceFetcher fetcher) {
+            mCoalescer = coalescer;
+            mFetcher = fetcher;
+            mPage = new Page<Integer>(0, startPosition, requestSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                mCoalescer.fetchRange(QUERY, mPage, mFetcher);
+            } catch (Exception e) {
+                mError = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.zhangls.paging.listview;
+
+import android.test.AndroidTestCase;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模拟列表滑动时的绑定与回收，验证{@link VisibleHolderRegistry}只记录屏幕上的holder且总数有界
+ */
+public class VisibleHolderRegistryTest extends AndroidTestCase {
+    private static final int BIND_COUNT = 100000;
+    private static final int VISIBLE_ROWS = 8;
+
+    public void testBoundedOverRecycledBinds() {
+        VisibleHolderRegistry registry = new VisibleHolderRegistry();
+        List<ImageItem> pool = new ArrayList<ImageItem>();
+        List<ImageItem> screen = new ArrayList<ImageItem>();
+        for (int position = 0; position < BIND_COUNT; position++) {
+            if (screen.size() == VISIBLE_ROWS) {
+                // 顶部的行滑出屏幕，进入回收堆
+                ImageItem scrapped = screen.remove(0);
+                registry.scrap(scrapped);
+                pool.add(scrapped);
+            }
+            ImageItem holder = pool.isEmpty() ? new TestItem() : pool.remove(0);
+            registry.bind(holder, position, 0);
+            // 同一位置重复绑定（如重新布局）不应产生重复记录
+            registry.bind(holder, position, 0);
+            screen.add(holder);
+
+            assertEquals(screen.size(), registry.getVisibleCount());
+            assertTrue(registry.size() <= VISIBLE_ROWS + 1);
+        }
+        assertVisible(registry, screen, BIND_COUNT - VISIBLE_ROWS);
+    }
+
+    public void testBoundedWhenHoldersAreNotReused() {
+        VisibleHolderRegistry registry = new VisibleHolderRegistry();
+        List<ImageItem> screen = new ArrayList<ImageItem>();
+        for (int position = 0; position < BIND_COUNT; position++) {
+            if (screen.size() == VISIBLE_ROWS) {
+                registry.scrap(screen.remove(0));
+            }
+            // 每次都新建holder，不在屏幕上的记录会被丢弃
+            ImageItem holder = new TestItem();
+            registry.bind(holder, position, 0);
+            screen.add(holder);
+
+            assertEquals(screen.size(), registry.getVisibleCount());
+            assertTrue(registry.size() <= VisibleHolderRegistry.DEFAULT_MAX_SIZE);
+        }
+        assertVisible(registry, screen, BIND_COUNT - VISIBLE_ROWS);
+    }
+
+    public void testScrapAndForget() {
+        VisibleHolderRegistry registry = new VisibleHolderRegistry();
+        ImageItem first = new TestItem();
+        ImageItem second = new TestItem();
+        registry.bind(first, 0, 1);
+        registry.bind(second, 1, 1);
+
+        registry.scrap(first);
+        assertEquals(1, registry.getVisibleCount());
+        assertSame(second, registry.getVisible(0).holder);
+        VisibleHolderRegistry.Entry entry = registry.get(first);
+        assertTrue(entry.imageCancelled);
+        assertEquals(0, entry.position);
+        assertEquals(1, entry.version);
+
+        registry.show(entry);
+        registry.show(entry);
+        assertEquals(2, registry.getVisibleCount());
+
+        registry.forget(second);
+        assertNull(registry.get(second));
+        assertEquals(1, registry.getVisibleCount());
+        assertSame(first, registry.getVisible(0).holder);
+    }
+
+    private static void assertVisible(VisibleHolderRegistry registry, List<ImageItem> screen, int firstPosition) {
+        Map<ImageItem, Integer> positions = new IdentityHashMap<ImageItem, Integer>();
+        for (int i = 0; i < registry.getVisibleCount(); i++) {
+            VisibleHolderRegistry.Entry entry = registry.getVisible(i);
+            assertNull("holder出现了两次", positions.put(entry.holder, entry.position));
+        }
+        for (int i = 0; i < screen.size(); i++) {
+            assertEquals(Integer.valueOf(firstPosition + i), positions.get(screen.get(i)));
+        }
+    }
+
+    private static class TestItem implements ImageItem {
+        @Override
+        public void loadImages() {
+        }
+
+        @Override
+        public void cancelLoadImages() {
+        }
+
+        @Override
+        public View getRootView() {
+            return null;
+        }
+    }
+}
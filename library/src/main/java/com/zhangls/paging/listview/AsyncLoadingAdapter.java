@@ -2,15 +2,23 @@ package com.zhangls.paging.listview;
 
 import android.content.Context;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewGroup.LayoutParams;
 import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -41,13 +49,32 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
     protected static final int VIEW_TYPE_ITEM = 2;
 
     /**
-     * 阻塞最大循环次数
+     * 加载被阻塞时最长的等待时间（毫秒），超时后不再等待
      */
-    private static final int MAX_BLOCK_LOOP_CNT = 300;
+    private static final int LOAD_GATE_TIMEOUT = 30 * 1000;
     /**
-     * 阻塞轮询周期
+     * 按滚动速度扩大的预加载提前量最多为几页
      */
-    private static final int CHECK_BLOCK_INTERVAL = 100;
+    private static final int MAX_PRELOAD_PAGES = 4;
+    /**
+     * 尚未测得时假定的每页加载耗时（毫秒）
+     */
+    private static final int DEFAULT_PAGE_LATENCY = 500;
+    /**
+     * 自适应分页时默认的每页目标耗时（毫秒）
+     */
+    public static final int DEFAULT_TARGET_PAGE_LATENCY = 800;
+    /**
+     * 短于该耗时（毫秒）的加载视为命中缓存，不用于估算数据源的吞吐量
+     */
+    private static final int MIN_SAMPLE_LATENCY = 20;
+    /**
+     * 自适应分页时每页最多比上一页增长的倍数
+     */
+    private static final int MAX_PAGE_GROWTH = 2;
+
+    private static final int MSG_LOAD_FAIL = 0;
+    private static final int MSG_LOAD_SUCCESS = 1;
     private static final String TAG = AsyncLoadingAdapter.class.getSimpleName();
 
     // ==========================================================================
@@ -55,10 +82,122 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
     // ==========================================================================
     protected Context mContext;
     // private int mItemCount;
-    private volatile boolean mLoading;
-    private volatile boolean mMoreEnabled;
+    /**
+     * 加载状态、正在加载的页数、“更多”开关和加载代数
+     */
+    private final LoadStateMachine mLoadState = new LoadStateMachine();
+    /**
+     * 只是配置，不参与状态转换
+     */
     private volatile int mItemLimit;
 
+    /**
+     * 执行加载的线程池，为空时使用{@link LoaderExecutor#getDefault()}
+     */
+    private Executor mLoaderExecutor;
+    private final LoadGate mLoadGate = new LoadGate();
+    /**
+     * 把加载结果投递回主线程，所有页共用
+     */
+    private final Handler mHandler;
+    /**
+     * 正在执行的加载任务，用于取消时中断工作线程
+     */
+    private final List<Future<?>> mLoadTasks = new ArrayList<Future<?>>();
+    /**
+     * 已发起但尚未发布的“更多”页，按请求顺序排列，结果按此顺序发布
+     */
+    private final List<Page<Data>> mMorePages = new ArrayList<Page<Data>>();
+    /**
+     * 最多同时加载的页数
+     */
+    private int mMaxPagesInFlight = 1;
+
+    /**
+     * 滚动速度（项/秒，向下为正）及其采样点
+     */
+    private float mScrollVelocity;
+    private int mLastScrollPosition = -1;
+    private long mLastScrollTime;
+    /**
+     * 每页加载耗时的平滑值（毫秒）
+     */
+    private long mPageLatency = DEFAULT_PAGE_LATENCY;
+    /**
+     * 自适应分页的每页项数范围，mMaxPageSize为0表示关闭
+     */
+    private int mMinPageSize;
+    private int mMaxPageSize;
+    private int mTargetPageLatency = DEFAULT_TARGET_PAGE_LATENCY;
+    /**
+     * 数据源吞吐量的平滑值（项/秒），0表示尚未测得
+     */
+    private float mThroughput;
+    /**
+     * 最近一次测得吞吐量的页的请求项数
+     */
+    private int mSampledPageSize;
+
+    /**
+     * 加载失败后的重试策略，为空时不自动重试
+     */
+    private RetryPolicy mRetryPolicy;
+    /**
+     * 连续失败后已经重试的次数，加载成功时清零
+     */
+    private int mRetryCount;
+    /**
+     * 退避结束的时间，此前闸门保持关闭
+     */
+    private long mRetryAt;
+    private final LoadGate.Condition mBackoffCondition = new LoadGate.Condition() {
+        @Override
+        public boolean isSatisfied() {
+            return SystemClock.uptimeMillis() >= mRetryAt;
+        }
+    };
+    /**
+     * 退避结束、解除阻塞时补发加载
+     */
+    private final Runnable mResumeTask = new Runnable() {
+        @Override
+        public void run() {
+            mLoadGate.signal();
+            loadMoreIfNeeded(getItemCount());
+        }
+    };
+    /**
+     * 数据源的熔断器，可能被多个适配器共享
+     */
+    private volatile CircuitBreaker mCircuitBreaker;
+    private final CircuitBreaker.Listener mBreakerListener = new CircuitBreaker.Listener() {
+        @Override
+        public void onAvailable(CircuitBreaker breaker) {
+            mLoadGate.signal();
+        }
+    };
+
+    private final List<ItemChangeObserver> mChangeObservers = new ArrayList<ItemChangeObserver>();
+    /**
+     * 绑定版本号。整体刷新时更新mFullVersion，单项变化时记录在mChangedVersions中，
+     * 版本未变的可见项在重新布局时无需重新绑定
+     */
+    private int mVersionCounter;
+    private int mFullVersion;
+    private final SparseIntArray mChangedVersions = new SparseIntArray();
+    /**
+     * 上次通知时“更多”项与底部填充视图是否存在，用于计算尾部的增删
+     */
+    private boolean mLastMoreRow;
+    private boolean mLastOverlayRow;
+    /**
+     * getCount()的缓存，-1表示已失效。项数、“更多”项或底部填充视图变化并通知后重新计算，
+     * 滚动时getView、getItemViewType不必反复求值。只在UI线程访问
+     */
+    private int mCachedCount = -1;
+    private int mCachedItemCount;
+    private boolean mCachedOverlayRow;
+
     protected AbsListView mAbsListView;
     // 底部填充视图高度（目前都是PagerTabBar高度）
     private int mBottomOverlayHeight = -1;
@@ -69,9 +208,9 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
     public AsyncLoadingAdapter(Context context) {
         mContext = context;
         // mItemCount = 0;
-        mLoading = false;
-        mMoreEnabled = true;
         mItemLimit = ITEM_COUNT_LIMIT;
+        mHandler = new LoadResultHandler();
+        mLoadGate.addCondition(mBackoffCondition);
     }
 
     // ==========================================================================
@@ -81,11 +220,35 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
         return mContext;
     }
 
+    public int getMaxPagesInFlight() {
+        return mMaxPagesInFlight;
+    }
+
+    /**
+     * 获取最近测得的每页加载耗时（毫秒）
+     */
+    public long getPageLatency() {
+        return mPageLatency;
+    }
+
+    public Executor getLoaderExecutor() {
+        return null != mLoaderExecutor ? mLoaderExecutor : LoaderExecutor.getDefault();
+    }
+
     // ==========================================================================
     // Setters
     // ==========================================================================
     public void setMoreEnabled(boolean enabled) {
-        mMoreEnabled = enabled;
+        mLoadState.setEnabled(enabled);
+        invalidateCount();
+    }
+
+    /**
+     * 设置是否还有更多项，没有更多时不再发起加载
+     */
+    protected void setHasMore(boolean hasMore) {
+        mLoadState.setExhausted(!hasMore);
+        invalidateCount();
     }
 
     public boolean setItemLimit(int limit) {
@@ -94,6 +257,7 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
             return false;
         }
         mItemLimit = limit;
+        invalidateCount();
         return true;
     }
 
@@ -101,6 +265,76 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
         mAbsListView = listView;
     }
 
+    /**
+     * 设置最多同时加载的页数。快速滑动时会按滚动速度提前发起后续页的加载，结果仍按请求顺序添加到列表；
+     * 慢速浏览时只加载一页。默认为1。
+     *
+     * @param count 最多同时加载的页数
+     */
+    public void setMaxPagesInFlight(int count) {
+        mMaxPagesInFlight = Math.max(1, count);
+    }
+
+    /**
+     * 开启自适应分页：每页的项数不再固定为{@link #getIncrement()}，而是按一屏可见的行数和测得的每页耗时、吞吐量调整，
+     * 网络快时增大每页以减少请求次数，耗时上升时减小每页以尽快显示。首页只请求略多于一屏的项数。
+     * <p>开启后返回的项数少于请求的项数不再表示没有更多，数据源需要通过{@link Page#setEndOfData(boolean)}或返回空页结束加载。
+     *
+     * @param minPageSize 每页最少的项数，实际不少于一屏的行数
+     * @param maxPageSize 每页最多的项数，0表示关闭
+     */
+    public void setAdaptivePageSize(int minPageSize, int maxPageSize) {
+        mMinPageSize = Math.max(1, minPageSize);
+        mMaxPageSize = Math.max(0, maxPageSize);
+    }
+
+    /**
+     * 设置自适应分页时每页的目标耗时，默认为{@link #DEFAULT_TARGET_PAGE_LATENCY}
+     *
+     * @param latency 目标耗时（毫秒）
+     */
+    public void setTargetPageLatency(int latency) {
+        mTargetPageLatency = Math.max(1, latency);
+    }
+
+    /**
+     * 设置加载失败后的重试策略。失败后按策略退避一段时间自动重试，期间不会发起新的加载；
+     * 超过最多重试次数或错误不可重试时才回调{@link #loadMoreFail(Exception)}。默认不自动重试。
+     *
+     * @param retryPolicy 为空时关闭自动重试
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * 设置数据源的熔断器，使用同一数据源的适配器应共享同一实例，如{@link CircuitBreaker#forSource(String)}。
+     * 熔断器断开时加载不再请求数据源，而是等待熔断器半开后自动恢复。
+     *
+     * @param circuitBreaker 为空时关闭熔断
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        final CircuitBreaker old = mCircuitBreaker;
+        if (null != old) {
+            old.removeListener(mBreakerListener);
+            mLoadGate.removeCondition(old);
+        }
+        mCircuitBreaker = circuitBreaker;
+        if (null != circuitBreaker) {
+            circuitBreaker.addListener(mBreakerListener);
+            mLoadGate.addCondition(circuitBreaker);
+        }
+    }
+
+    /**
+     * 指定执行加载的线程池。默认使用全局共享的{@link LoaderExecutor#getDefault()}。
+     *
+     * @param executor 为空时恢复默认
+     */
+    public void setLoaderExecutor(Executor executor) {
+        mLoaderExecutor = executor;
+    }
+
     // ==========================================================================
     // Methods
     // ==========================================================================
@@ -121,6 +355,35 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
         return DEFAULT_INCREMENT;
     }
 
+    public boolean isAdaptivePageSize() {
+        return mMaxPageSize > 0;
+    }
+
+    /**
+     * 获取下一页请求的项数：未开启自适应分页时为{@link #getIncrement()}，开启时按可见行数和测得的吞吐量计算，
+     * 使每页耗时接近目标值。调用在UI线程。
+     *
+     * @return 下一页请求的项数
+     */
+    protected int getPageSize() {
+        if (!isAdaptivePageSize()) {
+            return getIncrement();
+        }
+        final int rows = null == mAbsListView ? 0 : mAbsListView.getChildCount();
+        int size;
+        if (mThroughput <= 0) {
+            // 尚未测得吞吐量，先请求略多于一屏的项数尽快显示
+            size = rows > 0 ? rows + getPreloadCount() : getIncrement();
+        } else {
+            size = (int) (mThroughput * mTargetPageLatency / 1000f);
+            if (mSampledPageSize > 0) {
+                size = Math.min(size, mSampledPageSize * MAX_PAGE_GROWTH);
+            }
+        }
+        size = Math.max(size, Math.max(mMinPageSize, rows));
+        return Math.min(size, mMaxPageSize);
+    }
+
     /**
      * 获取列表预加载提前量。假设提前量是2，那么列表在滚动到倒数第2项时，就会提前开 始下一页更多项的加载。默认值为{@link #DEFAULT_PRELOAD_COUNT}。
      *
@@ -133,11 +396,13 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
     ;
 
     /**
-     * 是否还有更多项
+     * 是否还有更多项，默认由{@link #setHasMore(boolean)}设置
      *
      * @return true表示还可以继续加载，false表示全部项已经加载完毕。
      */
-    public abstract boolean hasMore();
+    public boolean hasMore() {
+        return !mLoadState.isExhausted();
+    }
 
     /**
      * 子类重写该方法实现加载更多项的逻辑。该方法会在非UI线程内异步执行。
@@ -188,70 +453,450 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
     public abstract View getMoreView(int position, View convertView, ViewGroup parent);
 
     /**
-     * 如果返回false，异步的loadMore线程将发生阻塞，直到返回true或者超时。
+     * 如果返回false，下一页的加载会被暂存在{@link #getLoadGate()}中（不占用加载线程），
+     * 直到条件变化后调用{@link LoadGate#signal()}时返回true，或者超时。
      *
-     * @return
+     * @return 是否可以加载该页
      */
     protected boolean readyForLoadMore(int startPosition, int requestSize) {
         return true;
     }
 
+    /**
+     * 获取加载下一页的闸门，可以注册登录、网络连接等放行条件。阻塞加载使用{@link #blockLoading()}
+     */
+    public LoadGate getLoadGate() {
+        return mLoadGate;
+    }
+
+    protected CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
     protected int getItemLimit() {
         return mItemLimit;
     }
 
     /**
-     * 加载更多
+     * 获取当前加载代数
+     *
+     * @return 当前加载代数
+     */
+    protected int getGeneration() {
+        return mLoadState.getEpoch();
+    }
+
+    /**
+     * 取消正在进行的加载。工作线程会被中断，已经在路上的结果到达后被静默丢弃，加载失败状态被清除。必须在UI线程调用。
      */
-    private synchronized void loadMore() {
+    public void cancelLoading() {
+        mLoadState.reset();
+        mHandler.removeCallbacks(mResumeTask);
+        mRetryCount = 0;
+        mRetryAt = 0;
+        mLoadGate.cancelAll();
+        for (int i = 0; i < mLoadTasks.size(); i++) {
+            mLoadTasks.get(i).cancel(true);
+        }
+        mLoadTasks.clear();
+        mMorePages.clear();
+    }
 
-        final int itemCount = getItemCount();
-        final int increment = Math.min(getIncrement(), getItemLimit() - getItemCount());
+    /**
+     * 释放适配器：取消加载并清除尚未处理的结果。页面销毁时调用。
+     */
+    public void release() {
+        cancelLoading();
+        mHandler.removeCallbacksAndMessages(null);
+    }
 
-        final Handler handler = new Handler() {
-            @Override
-            public void handleMessage(Message msg) {
-                super.handleMessage(msg);
-                notifyDataSetChanged();
-                mLoading = false;
-                if (msg.what == 1) {
-                    loadMoreSuccess((List<Data>) msg.obj,increment);
-                } else {
-                    loadMoreFail((Exception) msg.obj);
-                }
+    public void registerItemChangeObserver(ItemChangeObserver observer) {
+        if (!mChangeObservers.contains(observer)) {
+            mChangeObservers.add(observer);
+        }
+        mLastMoreRow = hasMoreRow();
+        mLastOverlayRow = needBottomOverlay();
+    }
+
+    public void unregisterItemChangeObserver(ItemChangeObserver observer) {
+        mChangeObservers.remove(observer);
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+        invalidateCount();
+        invalidateAllBindings();
+        mLastMoreRow = hasMoreRow();
+        mLastOverlayRow = needBottomOverlay();
+        for (int i = mChangeObservers.size() - 1; i >= 0; i--) {
+            mChangeObservers.get(i).onChanged();
+        }
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * 通知在指定位置插入了若干项。插入在尾部时，已显示的项不会被重新绑定。
+     *
+     * @param positionStart 插入的起始位置
+     * @param itemCount     插入的项数
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (positionStart + itemCount < getItemCount()) {
+            // 插入位置之后的项都发生了位移
+            invalidateAllBindings();
+        }
+        for (int i = mChangeObservers.size() - 1; i >= 0; i--) {
+            mChangeObservers.get(i).onItemRangeInserted(positionStart, itemCount);
+        }
+        notifyFooterChanged();
+    }
+
+    public void notifyItemChanged(int position) {
+        notifyItemRangeChanged(position, 1);
+    }
+
+    /**
+     * 通知指定范围内的项内容发生了变化，只有这些项会被重新绑定。
+     *
+     * @param positionStart 起始位置
+     * @param itemCount     项数
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        final int version = ++mVersionCounter;
+        for (int i = 0; i < itemCount; i++) {
+            mChangedVersions.put(positionStart + i, version);
+        }
+        for (int i = mChangeObservers.size() - 1; i >= 0; i--) {
+            mChangeObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+        }
+        notifyFooterChanged();
+    }
+
+    /**
+     * 通知从指定位置开始移除了若干项
+     *
+     * @param positionStart 起始位置
+     * @param itemCount     项数
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        invalidateAllBindings();
+        for (int i = mChangeObservers.size() - 1; i >= 0; i--) {
+            mChangeObservers.get(i).onItemRangeRemoved(positionStart, itemCount);
+        }
+        notifyFooterChanged();
+    }
+
+    /**
+     * 获取指定位置当前的绑定版本号。视图上次绑定时的版本号与之相同，说明该位置的内容没有变化。
+     *
+     * @param position 在列表中的位置
+     * @return 绑定版本号
+     */
+    protected int getBindVersion(int position) {
+        return Math.max(mFullVersion, mChangedVersions.get(position, 0));
+    }
+
+    /**
+     * 项数可能已变化，下次{@link #getCount()}时重新计算。修改数据后通知之前可以调用。
+     */
+    protected void invalidateCount() {
+        mCachedCount = -1;
+    }
+
+    private void invalidateAllBindings() {
+        mFullVersion = ++mVersionCounter;
+        mChangedVersions.clear();
+    }
+
+    /**
+     * 根据“更多”项与底部填充视图的出现或消失通知尾部变化，并让列表按新的项数布局
+     */
+    private void notifyFooterChanged() {
+        invalidateCount();
+        final int itemCount = getItemCount();
+        final boolean moreRow = hasMoreRow();
+        final boolean overlayRow = needBottomOverlay();
+        for (int i = mChangeObservers.size() - 1; i >= 0; i--) {
+            ItemChangeObserver observer = mChangeObservers.get(i);
+            if (mLastMoreRow && !moreRow) {
+                observer.onItemRangeRemoved(itemCount, 1);
+            } else if (!mLastMoreRow && moreRow) {
+                observer.onItemRangeInserted(itemCount, 1);
             }
-        };
-        new Thread() {
+            final int overlayPosition = moreRow ? itemCount + 1 : itemCount;
+            if (mLastOverlayRow && !overlayRow) {
+                observer.onItemRangeRemoved(overlayPosition, 1);
+            } else if (!mLastOverlayRow && overlayRow) {
+                observer.onItemRangeInserted(overlayPosition, 1);
+            }
+        }
+        mLastMoreRow = moreRow;
+        mLastOverlayRow = overlayRow;
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * 加载更多。由状态机决定能否发起，不需要加锁；mMorePages只在UI线程访问。
+     *
+     * @param maxInFlight 最多同时加载的页数
+     * @return 是否成功提交
+     */
+    private boolean loadMore(int maxInFlight) {
+        final int epoch = mLoadState.tryBegin(maxInFlight);
+        if (epoch < 0) {
+            return false;
+        }
+        final int requestedCount = getRequestedCount();
+        final int increment = Math.min(getPageSize(), getItemLimit() - getItemCount() - requestedCount);
+        final Page<Data> page = new Page<Data>(Page.KIND_MORE, epoch,
+                getLoadStartPosition() + requestedCount, increment);
+        page.setCursor(getLoadCursor());
+        if (!submitPage(page)) {
+            // 队列已满，下一次getView时重试
+            mLoadState.abort(epoch);
+            return false;
+        }
+        mMorePages.add(page);
+        return true;
+    }
+
+    /**
+     * 阻塞更多项的加载，已经在加载的页不受影响。阻塞期间的加载请求在{@link #unblockLoading()}时补发。
+     */
+    protected void blockLoading() {
+        mLoadState.block();
+    }
+
+    /**
+     * 解除阻塞或失败状态，阻塞期间有过加载请求时补发。可以在任意线程调用。
+     */
+    protected void unblockLoading() {
+        if (mLoadState.unblock()) {
+            mHandler.post(mResumeTask);
+        }
+    }
+
+    /**
+     * 已请求但尚未添加到列表的项数
+     */
+    private int getRequestedCount() {
+        int count = 0;
+        for (int i = 0; i < mMorePages.size(); i++) {
+            count += mMorePages.get(i).getRequestSize();
+        }
+        return count;
+    }
+
+    /**
+     * 下一页在数据源中的起始位置，默认为当前项数。
+     *
+     * @return 下一页的起始位置
+     */
+    protected int getLoadStartPosition() {
+        return getItemCount();
+    }
+
+    /**
+     * 记录列表第一个可见位置，用于估算滚动速度。由滚动监听调用。
+     *
+     * @param firstVisibleItem 第一个可见位置
+     */
+    protected void trackScrollPosition(int firstVisibleItem) {
+        final long now = SystemClock.uptimeMillis();
+        if (mLastScrollPosition >= 0 && now > mLastScrollTime && firstVisibleItem != mLastScrollPosition) {
+            float velocity = (firstVisibleItem - mLastScrollPosition) * 1000f / (now - mLastScrollTime);
+            mScrollVelocity = (mScrollVelocity + velocity) / 2;
+        }
+        if (firstVisibleItem != mLastScrollPosition) {
+            mLastScrollPosition = firstVisibleItem;
+            mLastScrollTime = now;
+        }
+    }
+
+    /**
+     * 列表停止滚动时调用，预加载恢复到{@link #getPreloadCount()}
+     */
+    protected void resetScrollVelocity() {
+        mScrollVelocity = 0;
+        mLastScrollPosition = -1;
+    }
+
+    /**
+     * 按当前滚动速度估算的、下一页到达之前会滚过的项数
+     */
+    private int getItemsAheadOfLoad() {
+        if (mScrollVelocity <= 0) {
+            return 0;
+        }
+        return (int) Math.min(mScrollVelocity * mPageLatency / 1000f, MAX_PRELOAD_PAGES * getPageSize());
+    }
+
+    /**
+     * 实际使用的预加载提前量：不小于{@link #getPreloadCount()}，快速滑动时按速度扩大
+     *
+     * @return 预加载提前量
+     */
+    protected int getEffectivePreloadCount() {
+        return Math.max(getPreloadCount(), getItemsAheadOfLoad());
+    }
+
+    /**
+     * 按滚动速度允许同时加载的页数
+     */
+    private int getAllowedPagesInFlight() {
+        final int max = getMaxPagesInFlight();
+        if (max <= 1) {
+            return 1;
+        }
+        return Math.max(1, Math.min(max, 1 + getItemsAheadOfLoad() / Math.max(1, getPageSize())));
+    }
+
+    /**
+     * 重新加载一页已被回收的数据，完成后回调{@link #onPreviousPageLoaded(Page)}或{@link #onPreviousPageFailed(Page)}。
+     * 调用在UI线程。
+     *
+     * @param startPosition 该页在数据源中的起始位置
+     * @param requestSize   该页的项数
+     * @param cursor        游标分页时请求该页使用的游标
+     * @param tag           调用者自定义的页标识，通过{@link Page#getTag()}取回
+     * @return 是否成功提交
+     */
+    protected final boolean loadPrevious(int startPosition, int requestSize, Object cursor, int tag) {
+        Page<Data> page = new Page<Data>(Page.KIND_PREVIOUS, mLoadState.getEpoch(), startPosition, requestSize);
+        page.setCursor(cursor);
+        page.setTag(tag);
+        return submitPage(page);
+    }
+
+    private boolean submitPage(final Page<Data> page) {
+        final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
             @Override
             public void run() {
-//                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
-
-
-//                int checkCount = 0;
-//                while (!readyForLoadMore(itemCount, increment) && checkCount++ < MAX_BLOCK_LOOP_CNT) {
-//                    Log.w(TAG, "Block load more until ready!");
-//                    try {
-//                        Thread.sleep(CHECK_BLOCK_INTERVAL);
-//                    } catch (Exception e) {
-//                        Log.e(TAG, e.toString());
-//                    }
-//                }
-                Message msg = new Message();
+                int what;
                 try {
-                    List<Data> dataList = onLoadMore(itemCount, increment);
-                    msg.what = 1;
-                    msg.obj = dataList;
+                    onLoadPage(page);
+                    if (page.getGeneration() == mLoadState.getEpoch()) {
+                        onPreparePage(page);
+                    }
+                    what = MSG_LOAD_SUCCESS;
                 } catch (Exception e) {
-                    e.printStackTrace();
-                    msg.what = 0;
-                    msg.obj = e;
-                } finally {
-                    handler.sendMessage(msg);
+                    if (page.getGeneration() == mLoadState.getEpoch()) {
+                        e.printStackTrace();
+                    }
+                    page.setError(e);
+                    what = MSG_LOAD_FAIL;
                 }
+                mHandler.sendMessage(mHandler.obtainMessage(what, page));
             }
-        }.start();
+        }, null);
+        if (Page.KIND_MORE != page.getKind()
+                || (mLoadGate.isOpen() && readyForLoadMore(page.getStartPosition(), page.getRequestSize()))) {
+            try {
+                getLoaderExecutor().execute(task);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Load rejected: " + e);
+                return false;
+            }
+        } else {
+            Log.w(TAG, "Block load more until ready!");
+            // 只有需要等待时才创建条件
+            final LoadGate.Condition ready = new LoadGate.Condition() {
+                @Override
+                public boolean isSatisfied() {
+                    return readyForLoadMore(page.getStartPosition(), page.getRequestSize());
+                }
+            };
+            mLoadGate.defer(new Runnable() {
+                @Override
+                public void run() {
+                    if (task.isCancelled()) {
+                        return;
+                    }
+                    // 等待闸门的时间不计入每页耗时
+                    page.mSubmitTime = SystemClock.uptimeMillis();
+                    try {
+                        getLoaderExecutor().execute(task);
+                    } catch (RejectedExecutionException e) {
+                        Log.w(TAG, "Load rejected: " + e);
+                        page.setError(e);
+                        mHandler.sendMessage(mHandler.obtainMessage(MSG_LOAD_FAIL, page));
+                    }
+                }
+            }, ready, LOAD_GATE_TIMEOUT);
+        }
+        page.mTask = task;
+        page.mSubmitTime = SystemClock.uptimeMillis();
+        mLoadTasks.add(task);
+        return true;
+    }
+
+    /**
+     * 在加载线程内加载一页，结果通过{@link Page#setItems(List)}返回。默认按页的类型转交
+     * {@link #onLoadMore(int, int)}或{@link #onLoadPrevious(int, int)}。
+     *
+     * @param page 待加载的一页
+     */
+    protected void onLoadPage(Page<Data> page) throws Exception {
+        if (Page.KIND_PREVIOUS == page.getKind()) {
+            page.setItems(onLoadPrevious(page.getStartPosition(), page.getRequestSize()));
+        } else {
+            page.setItems(onLoadMore(page.getStartPosition(), page.getRequestSize()));
+        }
+    }
 
+    /**
+     * 获取加载下一页使用的游标，在UI线程发起加载时调用。偏移分页返回null。
+     *
+     * @return 下一页的游标
+     */
+    protected Object getLoadCursor() {
+        return null;
+    }
 
+    /**
+     * 子类重写该方法实现重新加载已被回收的一页的逻辑。该方法会在非UI线程内异步执行。
+     * 默认按相同的位置转交{@link #onLoadMore(int, int)}。
+     *
+     * @param startPosition 该页在数据源中的起始位置
+     * @param requestSize   该页的项数
+     * @return 该页的数据
+     */
+    protected List<Data> onLoadPrevious(int startPosition, int requestSize) throws Exception {
+        return onLoadMore(startPosition, requestSize);
+    }
+
+    /**
+     * 重新加载的一页成功返回后在UI线程调用
+     *
+     * @param page 已加载的一页
+     */
+    protected void onPreviousPageLoaded(Page<Data> page) {
+    }
+
+    /**
+     * 重新加载的一页失败后在UI线程调用
+     *
+     * @param page 加载失败的一页
+     */
+    protected void onPreviousPageFailed(Page<Data> page) {
+    }
+
+    /**
+     * 在加载线程内对刚加载的一页数据做预处理（过滤、去重等），结果通过{@link Page#setPreparedItems(List)}
+     * 交给UI线程直接发布。默认不做处理。
+     *
+     * @param page 已加载的一页
+     */
+    protected void onPreparePage(Page<Data> page) {
+    }
+
+    /**
+     * 一页加载成功后在UI线程调用，默认转交{@link #loadMoreSuccess(List, int)}
+     *
+     * @param page 已加载的一页
+     */
+    protected void onPageLoaded(Page<Data> page) {
+        loadMoreSuccess(page.getItems(), page.getRequestSize());
     }
 
     public abstract void loadMoreSuccess(List<Data> list, int requestSize);
@@ -261,33 +906,103 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
 
     @Override
     public final int getCount() {
-        int bottomOverlayPlace = 0;
-        if (needBottomOverlay()) {
-            bottomOverlayPlace = 1;
+        if (mCachedCount < 0) {
+            final int itemCount = getItemCount();
+            final boolean overlayRow = needBottomOverlay();
+            int count = itemCount;
+            if (hasMoreRow()) {
+                count++;
+            }
+            if (overlayRow) {
+                count++;
+            }
+            mCachedItemCount = itemCount;
+            mCachedOverlayRow = overlayRow;
+            mCachedCount = count;
         }
+        return mCachedCount;
+    }
 
-        final int itemCount = getItemCount();
-        if (hasMore() && (itemCount < getItemLimit()) && mMoreEnabled) {
-            return itemCount + 1 + bottomOverlayPlace;
-        } else {
-            return itemCount + bottomOverlayPlace;
-        }
+    /**
+     * 是否显示“更多”项
+     */
+    private boolean hasMoreRow() {
+        return hasMore() && (getItemCount() < getItemLimit()) && mLoadState.isEnabled();
     }
 
     @Override
     public final int getViewTypeCount() {
-        // + 2 加载更多与底部填充视图
+        // + 3 加载更多、底部填充视图与占位视图
+        return getItemViewTypeCount() + 3;
+    }
+
+    /**
+     * 占位视图的类型，排在所有内容项类型之后
+     */
+    protected final int getPlaceholderViewType() {
         return getItemViewTypeCount() + 2;
     }
 
+    /**
+     * 指定位置的数据是否已被回收、只剩占位。默认返回false。
+     *
+     * @param position 在列表中的位置
+     * @return true表示该位置显示占位视图
+     */
+    protected boolean isPlaceholder(int position) {
+        return false;
+    }
+
+    /**
+     * 占位视图的高度，默认为{@link LayoutParams#WRAP_CONTENT}
+     */
+    protected int getPlaceholderHeight() {
+        return LayoutParams.WRAP_CONTENT;
+    }
+
+    /**
+     * 获取占位视图，默认是一个与普通列表项等高的空白视图
+     *
+     * @param position    在列表中的位置
+     * @param convertView 可重用视图
+     * @param parent      父视图
+     * @return 占位视图
+     */
+    protected View getPlaceholderView(int position, View convertView, ViewGroup parent) {
+        if (null == convertView) {
+            convertView = new View(getContext());
+        }
+        final int height = getPlaceholderHeight();
+        final LayoutParams params = convertView.getLayoutParams();
+        if (null == params) {
+            convertView.setLayoutParams(new AbsListView.LayoutParams(LayoutParams.FILL_PARENT, height));
+        } else if (params.height != height) {
+            // 复用已有的布局参数，滚动时不必每次新建
+            params.height = height;
+            convertView.setLayoutParams(params);
+        }
+        return convertView;
+    }
+
+    /**
+     * 占位视图显示时调用，子类可以在此重新加载该位置的数据
+     *
+     * @param position 在列表中的位置
+     */
+    protected void onPlaceholderShown(int position) {
+    }
+
     @Override
     public final int getItemViewType(int position) {
-
-        if (needBottomOverlay() && position == getCount() - 1) {
+        final int count = getCount();
+        if (mCachedOverlayRow && position == count - 1) {
             return VIEW_TYPE_BOTTOM_OVERLAY;
         }
 
-        if (position < getItemCount()) {
+        if (position < mCachedItemCount) {
+            if (isPlaceholder(position)) {
+                return getPlaceholderViewType();
+            }
             return getContentItemViewType(position);
         }
 
@@ -297,8 +1012,8 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
-
-        if (getItemViewType(position) == VIEW_TYPE_BOTTOM_OVERLAY) {
+        final int viewType = getItemViewType(position);
+        if (viewType == VIEW_TYPE_BOTTOM_OVERLAY) {
             if (convertView == null || !(convertView.getTag() instanceof Integer)) {
                 convertView = new View(getContext());
                 convertView.setLayoutParams(new AbsListView.LayoutParams(
@@ -312,19 +1027,16 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
 
 
         View view = null;
-        if (getItemViewType(position) != VIEW_TYPE_MORE) {
+        if (viewType == getPlaceholderViewType()) {
+            view = getPlaceholderView(position, convertView, parent);
+            onPlaceholderShown(position);
+        } else if (viewType != VIEW_TYPE_MORE) {
             view = getItemView(position, convertView, parent);
         } else {
             view = getMoreView(position, convertView, parent);
         }
 
-        final int itemCount = getItemCount();
-        if ((position >= itemCount - 1 - getPreloadCount()) &&
-                (itemCount < getItemLimit()) && hasMore() && mMoreEnabled && !mLoading) {
-            // load more items
-            mLoading = true;
-            loadMore();
-        }
+        loadMoreIfNeeded(position);
         if (view == null) {
             Log.e(TAG, "Found NULL view at " + position + "!");
         }
@@ -332,6 +1044,84 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
     }
 
 
+    /**
+     * 位置position即将显示时调用，进入预加载范围时开始加载下一页。
+     * getView会自动调用；不经过getView的列表（如RecyclerView的滚动预取）可以直接调用。
+     *
+     * @param position 即将显示的位置
+     */
+    public void loadMoreIfNeeded(int position) {
+        final long state = mLoadState.get();
+        final int preloadCount = getEffectivePreloadCount();
+        if (!LoadStateMachine.canLoad(state)) {
+            if ((LoadStateMachine.STATE_BLOCKED == LoadStateMachine.stateOf(state)
+                    || LoadStateMachine.STATE_FAILED == LoadStateMachine.stateOf(state))
+                    && position >= getItemCount() + getRequestedCount() - 1 - preloadCount) {
+                // 进入预加载范围时记录请求，解除阻塞时补发
+                mLoadState.tryBegin(0);
+            }
+            return;
+        }
+        final int allowedPages = getAllowedPagesInFlight();
+        while (mMorePages.size() < allowedPages) {
+            // 已加载和正在加载的项之后的位置
+            final int loadedEnd = getItemCount() + getRequestedCount();
+            if (position < loadedEnd - 1 - preloadCount || loadedEnd >= getItemLimit() || !hasMore()) {
+                break;
+            }
+            // load more items
+            if (!loadMore(allowedPages)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 按请求顺序发布已到达的“更多”页。某页失败或已没有更多时，丢弃其后的页。
+     */
+    private void publishArrivedPages() {
+        while (!mMorePages.isEmpty() && mMorePages.get(0).mArrived) {
+            Page<Data> page = mMorePages.remove(0);
+            final int oldItemCount = getItemCount();
+            if (page.isSuccessful()) {
+                mLoadState.complete(page.getGeneration());
+                mRetryCount = 0;
+                onPageLoaded(page);
+            } else if (scheduleRetry(page.getError())) {
+                mLoadState.abort(page.getGeneration());
+            } else {
+                mLoadState.fail(page.getGeneration());
+                loadMoreFail(page.getError());
+            }
+            // 只通知实际变化的范围，已显示的项不必重新绑定
+            final int addedCount = getItemCount() - oldItemCount;
+            if (addedCount > 0) {
+                notifyItemRangeInserted(oldItemCount, addedCount);
+            } else if (addedCount < 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyFooterChanged();
+            }
+            if (!page.isSuccessful() || !hasMore()) {
+                discardMorePages();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取消并丢弃所有尚未发布的“更多”页
+     */
+    private void discardMorePages() {
+        for (int i = 0; i < mMorePages.size(); i++) {
+            Page<Data> page = mMorePages.get(i);
+            page.mTask.cancel(true);
+            mLoadTasks.remove(page.mTask);
+            mLoadState.abort(page.getGeneration());
+        }
+        mMorePages.clear();
+    }
+
     /**
      * 是否需要底部填充视图（通常是有PagerTabBar的页面需要显示）
      *
@@ -345,7 +1135,81 @@ public abstract class AsyncLoadingAdapter<Data> extends BaseAdapter {
         return false;
     }
 
+    /**
+     * 按重试策略安排下一次加载。熔断器断开造成的失败不计入重试次数，等待熔断器恢复。
+     *
+     * @return 是否会自动重试
+     */
+    private boolean scheduleRetry(Exception error) {
+        final RetryPolicy policy = mRetryPolicy;
+        if (null == policy) {
+            return false;
+        }
+        long delay = 0;
+        if (!(error instanceof CircuitBreaker.OpenException)) {
+            delay = policy.getRetryDelay(mRetryCount, error);
+            if (delay < 0) {
+                mRetryCount = 0;
+                return false;
+            }
+            mRetryCount++;
+        }
+        mRetryAt = SystemClock.uptimeMillis() + delay;
+        mHandler.removeCallbacks(mResumeTask);
+        mHandler.postDelayed(mResumeTask, delay);
+        return true;
+    }
+
+    /**
+     * 用一页的耗时更新数据源吞吐量的估计，命中缓存的页不计入
+     */
+    private void sampleThroughput(Page<Data> page, long latency) {
+        final List<Data> items = page.getItems();
+        if (null == items || items.isEmpty() || latency < MIN_SAMPLE_LATENCY) {
+            return;
+        }
+        final float throughput = items.size() * 1000f / latency;
+        mThroughput = mThroughput <= 0 ? throughput : (mThroughput + throughput) / 2;
+        mSampledPageSize = page.getRequestSize();
+    }
+
     // ==========================================================================
     // Inner/Nested Classes
     // ==========================================================================
+    private class LoadResultHandler extends Handler {
+        LoadResultHandler() {
+            super(Looper.getMainLooper());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void handleMessage(Message msg) {
+            super.handleMessage(msg);
+            Page<Data> page = (Page<Data>) msg.obj;
+            if (page.getGeneration() != mLoadState.getEpoch()) {
+                // 已被取消的加载，丢弃结果
+                return;
+            }
+            mLoadTasks.remove(page.mTask);
+            if (Page.KIND_PREVIOUS == page.getKind()) {
+                if (msg.what == MSG_LOAD_SUCCESS) {
+                    onPreviousPageLoaded(page);
+                } else {
+                    onPreviousPageFailed(page);
+                }
+                return;
+            }
+            if (!mMorePages.contains(page)) {
+                // 已被丢弃的页
+                return;
+            }
+            final long latency = SystemClock.uptimeMillis() - page.mSubmitTime;
+            mPageLatency = (mPageLatency + latency) / 2;
+            if (msg.what == MSG_LOAD_SUCCESS) {
+                sampleThroughput(page, latency);
+            }
+            page.mArrived = true;
+            publishArrivedPages();
+        }
+    }
 }
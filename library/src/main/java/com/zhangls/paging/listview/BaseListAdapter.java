@@ -4,15 +4,23 @@ import android.content.Context;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.AdapterView.OnItemLongClickListener;
 import android.widget.Button;
 import android.widget.ListView;
 
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> implements OnItemClickListener,
         OnItemLongClickListener {
@@ -20,16 +28,28 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
     // ==========================================================================
     // Constants
     // ==========================================================================
+    /**
+     * 从缓存显示首屏后，后台重新加载首页所用的页标识
+     */
+    private static final int TAG_REVALIDATE = -1;
 
     // ==========================================================================
     // Fields
     // ==========================================================================
     protected List<Data> mItems;
 
-    private volatile boolean mHasMore;
+    /**
+     * 已加入列表项的键索引，只收录{@link #getItemKey(Object)}返回非空的项。加载线程会读取它做预去重。
+     */
+    private final ConcurrentHashMap<Object, Boolean> mItemKeys = new ConcurrentHashMap<Object, Boolean>();
+
+    /**
+     * 正在UI线程发布的页，用于在{@link #loadMoreSuccess(List, int)}中识别已预处理的数据
+     */
+    private Page<Data> mPublishingPage;
 
     /**
-     * 全部加载过的项数，包含未显示在列表里的重复项
+     * 全部加载过的项数，包含未显示在列表里的重复项。只在UI线程访问，发起加载时已算出页的起始位置
      */
     private int mLoadedCount;
 
@@ -37,12 +57,51 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
 
     private View mMoreView;
 
+    private Button mBtnRefresh;
+
+    /**
+     * 窗口模式下保留在内存中的页数，0表示不回收
+     */
+    private int mWindowPages;
+    /**
+     * 通过加载更多追加的各页在列表中的范围，按位置递增
+     */
+    private final List<PageRange> mPageRanges = new ArrayList<PageRange>();
     /**
-     * loadmore 之前是否需要阻塞
+     * 当前窗口中心所在页
      */
-    private volatile boolean mBlockLoadMore = false;
+    private int mWindowCenterPage = -1;
 
-    private Button mBtnRefresh;
+    /**
+     * 是否使用游标分页
+     */
+    private boolean mCursorPaging;
+    /**
+     * 游标分页时下一页的游标，为空表示从头加载
+     */
+    private Object mNextCursor;
+
+    /**
+     * 首页的磁盘缓存
+     */
+    private PageDiskCache<Data> mDiskCache;
+    /**
+     * 按页缓存的内存缓存，为空时不使用
+     */
+    private volatile PageMemoryCache mMemoryCache;
+    /**
+     * 刷新后首页不读取磁盘缓存
+     */
+    private volatile boolean mBypassDiskCache;
+    /**
+     * 合并相同查询的分页请求，为空时不合并
+     */
+    private volatile RequestCoalescer mRequestCoalescer;
+
+    /**
+     * 列表项的渲染模型，按对象标识索引。只在UI线程访问
+     */
+    private final Map<Data, Object> mRenderModels = new IdentityHashMap<Data, Object>();
 
     // ==========================================================================
     // Constructors
@@ -57,6 +116,8 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
         super(context);
 
         this.mItems = mItems;
+        // 与原先mHasMore的默认值一致，等setData或refresh后才开始加载
+        setHasMore(false);
     }
 
 
@@ -69,10 +130,10 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
             appendData(items);
             mLoadedCount = items.size();
             if (mLoadedCount < getIncrement()) {
-                mHasMore = false;
+                setHasMore(false);
                 setMoreEnabled(false);
             } else {
-                mHasMore = true;
+                setHasMore(true);
                 setMoreEnabled(true);
             }
         }
@@ -84,7 +145,7 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
                 listView.setOnItemLongClickListener(this);
             }
         }
-        mHasMore = true;
+        setHasMore(true);
 
         // 初始化moreView，以解决请求数据线程比UI线程跑得更快时，刷新UI造成的mBtnRefresh等控件空指针异常
         getMoreView(0, null, null);
@@ -95,6 +156,10 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
     // Getters
     // ==========================================================================
 
+    /**
+     * 获取列表数据。直接增删其中的项后需要调用{@link #notifyDataSetChanged()}或
+     * {@link #notifyItemRangeRemoved(int, int)}，去重所用的键索引随之更新。
+     */
     protected List<Data> getData() {
         return mItems;
     }
@@ -103,8 +168,56 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
     // ==========================================================================
     // Setters
     // ==========================================================================
-    protected void setHasMore(boolean hasMore) {
-        mHasMore = hasMore;
+    /**
+     * 开启游标分页：每页由{@link #getMoreDataByCursor(Page)}加载，数据源返回的游标原样传给下一页，
+     * 是否还有更多由游标是否为空决定，而不是返回的项数。
+     *
+     * @param cursorPaging true开启游标分页，false使用偏移分页
+     */
+    public void setCursorPaging(boolean cursorPaging) {
+        mCursorPaging = cursorPaging;
+    }
+
+    /**
+     * 设置首页的磁盘缓存，需要同时重写{@link #getQueryKey()}。冷启动时首屏直接从缓存显示，
+     * 随后在后台重新加载首页并在原位置替换首页的内容；每次从数据源加载到首页都会写入缓存。
+     *
+     * @param diskCache 为空时关闭磁盘缓存
+     */
+    public void setDiskCache(PageDiskCache<Data> diskCache) {
+        mDiskCache = diskCache;
+    }
+
+    /**
+     * 设置按页缓存的内存缓存，需要同时重写{@link #getQueryKey()}。加载每页前先查缓存，命中时不再请求数据源，
+     * 返回列表或切换Tab后新建的适配器可以直接恢复。缓存的页在有效期内可能已经过时，因此默认关闭，
+     * 需要时传入{@link PageMemoryCache#getDefault()}在适配器间共享。
+     *
+     * @param memoryCache 为空时关闭内存缓存
+     */
+    public void setMemoryCache(PageMemoryCache memoryCache) {
+        mMemoryCache = memoryCache;
+    }
+
+    /**
+     * 设置请求合并，需要同时重写{@link #getQueryKey()}。多个适配器同时请求相同查询的同一页时只请求一次数据源，
+     * 偏移分页时短时间内连续请求的相邻页合并为一次请求。可以传入{@link RequestCoalescer#getDefault()}在适配器间共享。
+     *
+     * @param requestCoalescer 为空时关闭请求合并
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        mRequestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * 开启窗口模式：只在内存中保留可见区域附近的pages页数据，较远的页被替换为占位，
+     * 滚动回来时通过{@link #onLoadPrevious(int, int)}重新加载。用于无限长的列表控制内存占用。
+     *
+     * @param pages 保留的页数，0表示关闭
+     */
+    public void setWindowSize(int pages) {
+        mWindowPages = Math.max(0, pages);
+        mWindowCenterPage = -1;
     }
 
 
@@ -113,28 +226,41 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
     // ==========================================================================
 
     /**
-     * 阻塞更多项的加载
+     * 阻塞更多项的加载，直到{@link #unblockLoadMore()}。阻塞期间的加载请求在解除阻塞时补发。
      */
     public void blockLoadMore() {
-        mBlockLoadMore = true;
+        blockLoading();
     }
 
     /**
-     * 取消对更多项加载的阻塞
+     * 取消对更多项加载的阻塞，加载失败后的重试也通过该方法
      */
     public void unblockLoadMore() {
-        mBlockLoadMore = false;
+        unblockLoading();
     }
 
     private boolean addUniqueItem(Data item) {
-        boolean duplicate = false;
+        return claimItem(item) && mItems.add(item);
+    }
+
+    /**
+     * 检查项是否与已有的项重复，不重复时把它的键记入索引
+     *
+     * @return 不重复时返回true
+     */
+    private boolean claimItem(Data item) {
+        Object key = getItemKey(item);
+        if (null != key) {
+            return null == mItemKeys.putIfAbsent(key, Boolean.TRUE);
+        }
         for (int i = 0; i < mItems.size(); i++) {
-            if (isItemDuplicate(item, mItems.get(i))) {
-                duplicate = true;
-                break;
+            Data existing = mItems.get(i);
+            // 窗口模式下被回收的位置为空
+            if (null != existing && isItemDuplicate(item, existing)) {
+                return false;
             }
         }
-        return !duplicate && mItems.add(item);
+        return true;
     }
 
     public final int appendData(List<? extends Data> data) {
@@ -142,36 +268,119 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
             return 0;
         }
         int addedCount = 0;
-        List<? extends Data> dataCopy = new ArrayList<Data>(data);
-        for (Data item : dataCopy) {
+        // 按下标遍历开始时的项数，data是mItems本身时也不会越界，无需复制
+        final int size = data.size();
+        for (int i = 0; i < size; i++) {
+            Data item = data.get(i);
             if (!filterItem(item) && addUniqueItem(item)) {
                 addedCount++;
             }
         }
+        if (addedCount > 0) {
+            invalidateCount();
+        }
         return addedCount;
     }
 
+    /**
+     * 添加已经在加载线程过滤和预去重过的数据。有键的项只需再做一次O(1)的索引检查。
+     */
+    private int appendPreparedData(List<Data> data) {
+        int addedCount = 0;
+        for (int i = 0; i < data.size(); i++) {
+            if (addUniqueItem(data.get(i))) {
+                addedCount++;
+            }
+        }
+        if (addedCount > 0) {
+            invalidateCount();
+        }
+        return addedCount;
+    }
+
+    /**
+     * 在加载线程内过滤并按键去重，返回待添加的数据
+     *
+     * @param dedup 是否去重。重新加载被回收的页时这些项的键仍在索引中，不能去重
+     */
+    private List<Data> prepareData(List<Data> data, boolean dedup) {
+        List<Data> prepared = new ArrayList<Data>(data.size());
+        Set<Object> pageKeys = new HashSet<Object>();
+        for (int i = 0; i < data.size(); i++) {
+            Data item = data.get(i);
+            if (filterItem(item)) {
+                continue;
+            }
+            Object key = dedup ? getItemKey(item) : null;
+            if (null != key && (mItemKeys.containsKey(key) || !pageKeys.add(key))) {
+                continue;
+            }
+            prepared.add(item);
+        }
+        return prepared;
+    }
+
     public final void setData(final List<? extends Data> data) {
         // 调用在UI线程
+        cancelLoading();
         if (mItems != data) {
             mItems.clear();
+            mItemKeys.clear();
+            mRenderModels.clear();
+            clearPageRanges();
             appendData(data);
         }
         handleLoadMore(data);
     }
 
+    /**
+     * 游标分页时设置首屏数据及下一页的游标。调用在UI线程。
+     *
+     * @param data       首屏数据
+     * @param nextCursor 下一页的游标，为空表示没有更多
+     */
+    public final void setData(final List<? extends Data> data, Object nextCursor) {
+        setData(data);
+        mNextCursor = nextCursor;
+        setHasMore(null != nextCursor);
+        setMoreEnabled(hasMore());
+    }
+
+    /**
+     * 清空列表并从头重新加载，正在进行的加载会被取消。调用在UI线程。
+     */
+    public void refresh() {
+        cancelLoading();
+        final String queryKey = getQueryKey();
+        final PageMemoryCache memoryCache = mMemoryCache;
+        if (null != queryKey && null != memoryCache) {
+            memoryCache.remove(queryKey);
+        }
+        mBypassDiskCache = true;
+        mItems.clear();
+        mItemKeys.clear();
+        mRenderModels.clear();
+        clearPageRanges();
+        mNextCursor = null;
+        mLoadedCount = 0;
+        setHasMore(true);
+        setMoreEnabled(true);
+        unblockLoadMore();
+        notifyDataSetChanged();
+    }
 
     protected void handleLoadMore(List<? extends Data> data) {
+        mNextCursor = null;
         if (data != null) {
             mLoadedCount = data.size();
         } else {
             mLoadedCount = 0;
         }
-        if (mLoadedCount < getIncrement()) {
-            mHasMore = false;
+        if (isAdaptivePageSize() ? 0 == mLoadedCount : mLoadedCount < getIncrement()) {
+            setHasMore(false);
             setMoreEnabled(false);
         } else {
-            mHasMore = true;
+            setHasMore(true);
             setMoreEnabled(true);
         }
     }
@@ -205,11 +414,6 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
         return VIEW_TYPE_ITEM;
     }
 
-    @Override
-    public boolean hasMore() {
-        return mHasMore;
-    }
-
     @Override
     protected View getItemView(final int position, View convertView, ViewGroup parent) {
         final Object item = getItem(position);
@@ -220,19 +424,106 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
     }
 
     @Override
-    protected boolean readyForLoadMore(int startPosition, int requestSize) {
-        return !mBlockLoadMore;
+    protected List<Data> onLoadMore(int startPosition, int requestSize) throws Exception {
+        Log.d(TAG, "Req " + startPosition + " + " + requestSize);
+        return getMoreData(new ArrayList<Data>(requestSize), startPosition, requestSize);
     }
 
+    /**
+     * 在加载线程内完成{@link #filterItem(Object)}过滤和基于{@link #getItemKey(Object)}的去重，
+     * UI线程只需发布结果。未提供键的项仍在UI线程用{@link #isItemDuplicate(Object, Object)}比较。
+     * 子类重写时需调用super。
+     */
     @Override
-    protected List<Data> onLoadMore(int startPosition, int requestSize) throws Exception {
-        Log.d(TAG, "Req " + mLoadedCount + " + " + requestSize);
-        List<Data> moreItems = new Vector<Data>(requestSize);
+    protected void onPreparePage(Page<Data> page) {
+        List<Data> items = page.getItems();
+        if (null != items) {
+            List<Data> prepared = prepareData(items, Page.KIND_MORE == page.getKind());
+            page.setPreparedItems(prepared);
+            page.setRenderModels(createRenderModels(prepared));
+        }
+    }
 
+    /**
+     * 在加载线程为一页数据计算渲染模型，都为空时返回null
+     */
+    private List<Object> createRenderModels(List<Data> items) {
+        List<Object> models = null;
+        for (int i = 0; i < items.size(); i++) {
+            Object model = onCreateRenderModel(items.get(i));
+            if (null != model && null == models) {
+                models = new ArrayList<Object>(items.size());
+                for (int j = 0; j < i; j++) {
+                    models.add(null);
+                }
+            }
+            if (null != models) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
 
-        moreItems = getMoreData(moreItems, getLoadedCount(), requestSize);
+    private void putRenderModels(Page<Data> page) {
+        List<Object> models = page.getRenderModels();
+        if (null == models) {
+            return;
+        }
+        List<Data> items = page.getPreparedItems();
+        for (int i = 0; i < models.size(); i++) {
+            if (null != models.get(i)) {
+                mRenderModels.put(items.get(i), models.get(i));
+            }
+        }
+    }
 
-        return moreItems;
+    /**
+     * 在加载线程为列表项计算渲染模型，如格式化好的日期、构建好的Span、测量好的文字布局等。
+     * 绑定时通过{@link #getRenderModel(int)}取出直接使用，把耗时的绑定工作移出UI线程，回收后重新绑定也不必重复计算。
+     * 默认返回null，即不使用渲染模型。
+     *
+     * @param item 列表项数据
+     * @return 渲染模型
+     */
+    protected Object onCreateRenderModel(Data item) {
+        return null;
+    }
+
+    /**
+     * 获取某位置列表项的渲染模型。通过{@link #setData(List)}等方式直接设置的数据没有预先计算，首次获取时在UI线程计算。
+     *
+     * @param position 在列表中的位置
+     * @return 渲染模型，没有时返回null
+     */
+    public Object getRenderModel(int position) {
+        if (position < 0 || position >= mItems.size()) {
+            return null;
+        }
+        Data item = mItems.get(position);
+        if (null == item) {
+            return null;
+        }
+        Object model = mRenderModels.get(item);
+        if (null == model && !mRenderModels.containsKey(item)) {
+            model = onCreateRenderModel(item);
+            mRenderModels.put(item, model);
+        }
+        return model;
+    }
+
+    @Override
+    protected void onPageLoaded(Page<Data> page) {
+        putRenderModels(page);
+        mPublishingPage = page;
+        try {
+            super.onPageLoaded(page);
+        } finally {
+            mPublishingPage = null;
+        }
+        if (page.isFromCache()) {
+            // 先显示缓存，再在后台重新加载首页
+            loadPrevious(0, page.getRequestSize(), null, TAG_REVALIDATE);
+        }
     }
 
     @Override
@@ -240,21 +531,446 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
         int addedCount = 0;
         int responseSize = 0;
         responseSize = getResponseSize(list);
+        // 经由onPageLoaded发布的页，可以使用加载线程的预处理结果和游标
+        final Page<Data> page = null != mPublishingPage && mPublishingPage.getItems() == list ? mPublishingPage : null;
         if (responseSize > 0) {
+            final int sourceStart = mLoadedCount;
+            final int itemStart = mItems.size();
             mLoadedCount += responseSize;
-            addedCount = appendData(list);
+            if (null != page && page.isPrepared()) {
+                addedCount = appendPreparedData(page.getPreparedItems());
+            } else {
+                addedCount = appendData(list);
+            }
+            if (addedCount > 0 && itemStart + addedCount == mItems.size()) {
+                mPageRanges.add(new PageRange(itemStart, addedCount, sourceStart, responseSize,
+                        null == page ? null : page.getCursor()));
+            }
         }
         Log.d(TAG, "Rsp " + responseSize + ", Cnt " + mItems.size());
-        mHasMore = responseSize >= requestSize;
+        if (mCursorPaging && null != page) {
+            mNextCursor = page.getNextCursor();
+            setHasMore(null != mNextCursor);
+        } else if (isAdaptivePageSize()) {
+            // 自适应分页时每页项数不固定，只有数据源明确告知或返回空页才结束
+            setHasMore(responseSize > 0 && (null == page || !page.isEndOfData()));
+        } else {
+            setHasMore(responseSize >= requestSize && (null == page || !page.isEndOfData()));
+        }
     }
 
     @Override
     public void loadMoreFail(Exception e) {
         blockLoadMore();
-        mHasMore = true;
+        setHasMore(true);
         mBtnRefresh.setVisibility(View.VISIBLE);
     }
 
+    @Override
+    protected void onLoadPage(Page<Data> page) throws Exception {
+        final String queryKey = getQueryKey();
+        if (null == queryKey) {
+            loadFromSource(page);
+            return;
+        }
+        final boolean revalidate = Page.KIND_PREVIOUS == page.getKind() && TAG_REVALIDATE == page.getTag();
+        final PageMemoryCache memoryCache = mMemoryCache;
+        final String memoryKey = null == memoryCache ? null : mCursorPaging
+                ? PageMemoryCache.cursorKey(queryKey, page.getCursor())
+                : PageMemoryCache.offsetKey(queryKey, page.getStartPosition());
+        if (null != memoryKey && !revalidate) {
+            PageMemoryCache.Entry entry = memoryCache.get(memoryKey);
+            if (null != entry && setCachedItems(page, entry)) {
+                return;
+            }
+        }
+        final PageDiskCache<Data> diskCache = isFirstPage(page) ? mDiskCache : null;
+        if (null != diskCache && Page.KIND_MORE == page.getKind() && !mBypassDiskCache) {
+            PageDiskCache.Entry<Data> entry = diskCache.get(queryKey, 0);
+            if (null != entry) {
+                page.setItems(entry.getItems());
+                page.setNextCursor(entry.getNextCursor());
+                page.setFromCache(true);
+                return;
+            }
+        }
+        loadFromSource(page);
+        if (null == page.getItems()) {
+            return;
+        }
+        if (null != memoryKey) {
+            memoryCache.put(memoryKey, page.getItems(), page.getNextCursor(), page.isEndOfData());
+        }
+        if (null != diskCache) {
+            diskCache.put(queryKey, 0, page.getItems(), page.getNextCursor());
+            mBypassDiskCache = false;
+        }
+    }
+
+    /**
+     * 用内存缓存页填充本页。偏移分页的缓存键不含项数，缓存页多于本页时截取，
+     * 少于本页且数据源没有告知结束时（按其他项数缓存），只有自适应分页可以使用。
+     *
+     * @return 是否命中
+     */
+    private boolean setCachedItems(Page<Data> page, PageMemoryCache.Entry entry) {
+        // 缓存由相同查询标识的适配器写入，数据类型一致
+        @SuppressWarnings("unchecked")
+        List<Data> items = (List<Data>) entry.getItems();
+        boolean endOfData = entry.isEndOfData();
+        if (!mCursorPaging && null != items) {
+            final int size = page.getRequestSize();
+            if (items.size() > size) {
+                items = new ArrayList<Data>(items.subList(0, size));
+                endOfData = false;
+            } else if (items.size() < size && !endOfData && !isAdaptivePageSize()) {
+                return false;
+            }
+        }
+        page.setItems(items);
+        page.setNextCursor(entry.getNextCursor());
+        page.setEndOfData(endOfData);
+        return true;
+    }
+
+    private void loadFromSource(Page<Data> page) throws Exception {
+        final CircuitBreaker breaker = getCircuitBreaker();
+        if (null == breaker) {
+            requestSource(page);
+            return;
+        }
+        if (!breaker.tryAcquire()) {
+            throw new CircuitBreaker.OpenException();
+        }
+        try {
+            requestSource(page);
+        } catch (Exception e) {
+            if (e instanceof InterruptedIOException || e instanceof InterruptedException
+                    || Thread.currentThread().isInterrupted()) {
+                breaker.onCancel();
+            } else {
+                breaker.onFailure();
+            }
+            throw e;
+        }
+        breaker.onSuccess();
+    }
+
+    private void requestSource(final Page<Data> page) throws Exception {
+        final RequestCoalescer coalescer = mRequestCoalescer;
+        final String queryKey = null == coalescer ? null : getQueryKey();
+        if (null == queryKey) {
+            page.setItems(mCursorPaging ? getMoreDataByCursor(page) : getMoreData(page));
+            return;
+        }
+        if (mCursorPaging) {
+            // 游标由数据源在getMoreDataByCursor中写入页，共享执行请求的页
+            Page<Data> loaded = coalescer.execute(PageMemoryCache.cursorKey(queryKey, page.getCursor()),
+                    new Callable<Page<Data>>() {
+                        @Override
+                        public Page<Data> call() throws Exception {
+                            page.setItems(getMoreDataByCursor(page));
+                            return page;
+                        }
+                    });
+            if (loaded != page) {
+                page.setItems(loaded.getItems());
+                page.setNextCursor(loaded.getNextCursor());
+                page.setEndOfData(loaded.isEndOfData());
+            }
+            return;
+        }
+        // 合并后的请求范围与本页不同，数据源在合并后的页上设置的没有更多由fetchRange转给本页
+        coalescer.fetchRange(queryKey, page, new RequestCoalescer.RangeFetcher<Data>() {
+            @Override
+            public List<Data> fetch(Page<Data> range) throws Exception {
+                return getMoreData(range);
+            }
+        });
+    }
+
+    private boolean isFirstPage(Page<Data> page) {
+        return mCursorPaging ? null == page.getCursor() : 0 == page.getStartPosition();
+    }
+
+    /**
+     * 返回当前列表查询的唯一标识（如接口地址加参数），用于内存缓存、磁盘缓存和请求合并。默认返回null，表示不使用缓存。
+     *
+     * @return 查询的唯一标识
+     */
+    protected String getQueryKey() {
+        return null;
+    }
+
+    @Override
+    protected Object getLoadCursor() {
+        return mNextCursor;
+    }
+
+    /**
+     * 偏移分页时下一页从全部加载过的项数（含被过滤、去重的项）开始
+     */
+    @Override
+    protected int getLoadStartPosition() {
+        return mLoadedCount;
+    }
+
+    /**
+     * 游标分页必须等上一页返回游标，只能逐页加载。自适应分页时每页返回的项数决定下一页的起始位置，
+     * 同时请求多页会留下空隙或重叠，也只能逐页加载。
+     */
+    @Override
+    public int getMaxPagesInFlight() {
+        return mCursorPaging || isAdaptivePageSize() ? 1 : super.getMaxPagesInFlight();
+    }
+
+    @Override
+    protected List<Data> onLoadPrevious(int startPosition, int requestSize) throws Exception {
+        return getMoreData(new ArrayList<Data>(requestSize), startPosition, requestSize);
+    }
+
+    @Override
+    protected boolean isPlaceholder(int position) {
+        return position < mItems.size() && null == mItems.get(position);
+    }
+
+    @Override
+    protected void onPlaceholderShown(int position) {
+        int index = findPageRange(position);
+        if (index >= 0 && mPageRanges.get(index).evicted) {
+            restorePage(index);
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        super.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        if (mWindowPages > 0 && visibleItemCount > 0) {
+            updateWindow(firstVisibleItem + visibleItemCount / 2);
+        }
+    }
+
+    /**
+     * 以centerPosition所在页为中心，回收窗口外的页并恢复窗口内已被回收的页
+     */
+    private void updateWindow(int centerPosition) {
+        final int center = findPageRange(centerPosition);
+        if (center < 0 || center == mWindowCenterPage) {
+            return;
+        }
+        mWindowCenterPage = center;
+        final int half = mWindowPages / 2;
+        for (int i = 0; i < mPageRanges.size(); i++) {
+            PageRange range = mPageRanges.get(i);
+            boolean inWindow = Math.abs(i - center) <= half;
+            if (!inWindow && !range.evicted) {
+                evictPage(range);
+            } else if (inWindow && range.evicted) {
+                restorePage(i);
+            }
+        }
+    }
+
+    /**
+     * 找到包含position的页；position在第一页之前时返回0，没有任何页时返回-1
+     */
+    private int findPageRange(int position) {
+        int low = 0;
+        int high = mPageRanges.size() - 1;
+        int found = mPageRanges.isEmpty() ? -1 : 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mPageRanges.get(mid).itemStart <= position) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private void evictPage(PageRange range) {
+        range.keys = new Object[range.itemCount];
+        for (int i = 0; i < range.itemCount; i++) {
+            Data item = mItems.get(range.itemStart + i);
+            range.keys[i] = null == item ? null : getItemKey(item);
+            if (null != item) {
+                mRenderModels.remove(item);
+            }
+            mItems.set(range.itemStart + i, null);
+        }
+        range.evicted = true;
+        // 被回收的页远离可见区域，ListView不会重新布局；RecyclerView缓存的视图重新显示前不会重新绑定，
+        // 需要通知这些位置已变为占位，滚动回来时以占位视图重新获取
+        notifyItemRangeChanged(range.itemStart, range.itemCount);
+    }
+
+    private void restorePage(int index) {
+        PageRange range = mPageRanges.get(index);
+        if (!range.loading) {
+            range.loading = loadPrevious(range.sourceStart, range.requestSize, range.cursor, index);
+        }
+    }
+
+    @Override
+    protected void onPreviousPageLoaded(Page<Data> page) {
+        if (TAG_REVALIDATE == page.getTag()) {
+            onRevalidated(page);
+            return;
+        }
+        if (page.getTag() >= mPageRanges.size()) {
+            return;
+        }
+        PageRange range = mPageRanges.get(page.getTag());
+        range.loading = false;
+        if (!range.evicted) {
+            return;
+        }
+        List<Data> items = page.isPrepared() ? page.getPreparedItems() : page.getItems();
+        if (null == items) {
+            items = new ArrayList<Data>(0);
+        }
+        if (hasAllKeys(range.keys)) {
+            // 按键放回原位置，数据源的变化不会让列表项错位
+            Map<Object, Data> byKey = new HashMap<Object, Data>(items.size() * 2);
+            for (int i = 0; i < items.size(); i++) {
+                byKey.put(getItemKey(items.get(i)), items.get(i));
+            }
+            for (int i = 0; i < range.itemCount; i++) {
+                mItems.set(range.itemStart + i, byKey.get(range.keys[i]));
+            }
+        } else {
+            for (int i = 0; i < range.itemCount; i++) {
+                mItems.set(range.itemStart + i, i < items.size() ? items.get(i) : null);
+            }
+        }
+        putRenderModels(page);
+        range.evicted = false;
+        range.keys = null;
+        final int removed = compactPageRange(page.getTag());
+        notifyItemRangeChanged(range.itemStart, range.itemCount);
+        if (removed > 0) {
+            notifyItemRangeRemoved(range.itemStart + range.itemCount, removed);
+        }
+    }
+
+    /**
+     * 移除重新加载后仍为空的位置（数据源中已不存在的项），否则它们会一直显示为占位。
+     * 其后各页的位置随之前移，该页的内容整体视为变化，尾部少了被移除的项数。
+     *
+     * @return 移除的项数
+     */
+    private int compactPageRange(int index) {
+        PageRange range = mPageRanges.get(index);
+        int removed = 0;
+        for (int i = range.itemCount - 1; i >= 0; i--) {
+            if (null == mItems.get(range.itemStart + i)) {
+                mItems.remove(range.itemStart + i);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            range.itemCount -= removed;
+            for (int i = index + 1; i < mPageRanges.size(); i++) {
+                mPageRanges.get(i).itemStart -= removed;
+            }
+            invalidateCount();
+        }
+        return removed;
+    }
+
+    /**
+     * 后台重新加载的首页返回，在原位置用新数据替换从缓存显示的首页。之后的页、正在加载的页和滚动位置都保持不变，
+     * 与之后的页重复的新项不再加入。
+     */
+    private void onRevalidated(Page<Data> page) {
+        final boolean prepared = page.isPrepared();
+        final List<Data> items = prepared ? page.getPreparedItems() : page.getItems();
+        if (null == items) {
+            return;
+        }
+        final PageRange first = mPageRanges.isEmpty() || 0 != mPageRanges.get(0).itemStart ? null : mPageRanges.get(0);
+        if (null != first && (first.evicted || first.loading)) {
+            // 首页已被回收，重新加载时会取得刚写入缓存的新数据
+            return;
+        }
+        final int oldCount = null == first ? 0 : first.itemCount;
+        for (int i = oldCount - 1; i >= 0; i--) {
+            Data item = mItems.remove(i);
+            mRenderModels.remove(item);
+            Object key = getItemKey(item);
+            if (null != key) {
+                mItemKeys.remove(key);
+            }
+        }
+        final List<Object> models = prepared ? page.getRenderModels() : null;
+        final List<Data> merged = new ArrayList<Data>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            Data item = items.get(i);
+            if ((prepared || !filterItem(item)) && claimItem(item)) {
+                merged.add(item);
+                if (null != models && null != models.get(i)) {
+                    mRenderModels.put(item, models.get(i));
+                }
+            }
+        }
+        mItems.addAll(0, merged);
+        final int newCount = merged.size();
+        final int delta = newCount - oldCount;
+        if (null != first) {
+            first.itemCount = newCount;
+        } else if (mPageRanges.isEmpty() && newCount > 0) {
+            mPageRanges.add(new PageRange(0, newCount, 0, page.getRequestSize(), null));
+        }
+        for (int i = null == first ? 0 : 1; i < mPageRanges.size(); i++) {
+            mPageRanges.get(i).itemStart += delta;
+        }
+        if (mPageRanges.size() <= 1) {
+            // 还没有加载之后的页，以重新加载的结果为准决定是否还有更多
+            if (mCursorPaging) {
+                mNextCursor = page.getNextCursor();
+                setHasMore(null != mNextCursor);
+            } else if (!hasMore()) {
+                final int responseSize = getResponseSize(page.getItems());
+                mLoadedCount = responseSize;
+                setHasMore(responseSize >= page.getRequestSize() && !page.isEndOfData());
+            }
+        }
+        invalidateCount();
+        notifyItemRangeChanged(0, Math.min(oldCount, newCount));
+        if (delta > 0) {
+            notifyItemRangeInserted(oldCount, delta);
+        } else if (delta < 0) {
+            notifyItemRangeRemoved(newCount, -delta);
+        }
+    }
+
+    @Override
+    protected void onPreviousPageFailed(Page<Data> page) {
+        if (page.getTag() >= 0 && page.getTag() < mPageRanges.size()) {
+            // 下次占位视图显示或窗口移动时重试
+            mPageRanges.get(page.getTag()).loading = false;
+        }
+    }
+
+    private static boolean hasAllKeys(Object[] keys) {
+        if (null == keys) {
+            return false;
+        }
+        for (Object key : keys) {
+            if (null == key) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void clearPageRanges() {
+        mPageRanges.clear();
+        mWindowCenterPage = -1;
+    }
+
     protected int getResponseSize(List<Data> moreItems) {
         return moreItems == null ? 0 : moreItems.size();
     }
@@ -275,15 +991,29 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
 
 
     /**
-     * 判断是否是重复项的逻辑。需要时重写。
+     * 判断是否是重复项的逻辑。需要时重写。{@link #getItemKey(Object)}返回非空时不会被调用。
      */
     public boolean isItemDuplicate(Data item1, Data item2) {
         return false;
     }
 
+    /**
+     * 返回列表项的唯一键，键需要正确实现equals和hashCode。返回非空时，去重通过哈希索引在O(1)内完成，
+     * 不再逐项调用{@link #isItemDuplicate(Object, Object)}；返回null时仍使用逐项比较。默认返回null。
+     * 与{@link #filterItem(Object)}一样也会在加载线程调用。
+     *
+     * @param item 列表项
+     * @return 列表项的唯一键
+     */
+    protected Object getItemKey(Data item) {
+        return null;
+    }
+
 
     /**
      * 判断某个item是否需要被过滤掉。如果返回true，则该item不会被添加到列表数据源中。默认返回false。
+     * <p>加载更多的页在加载线程内过滤（见{@link #onPreparePage(Page)}），{@link #setData(List)}等直接设置的数据在UI线程过滤。
+     * 实现中不能访问视图，读取的状态需要是线程安全的。
      *
      * @param item
      * @return 需要被过滤返回true，否则返回false
@@ -302,6 +1032,39 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
      */
     protected abstract List<Data> getMoreData(List<Data> out, int startPosition, int requestSize) throws Exception;
 
+    /**
+     * 游标分页时获取一页数据的逻辑，在非UI线程执行。从{@link Page#getCursor()}取得本页游标（首页为空），
+     * 通过{@link Page#setNextCursor(Object)}返回下一页的游标，不设置表示已经没有更多。
+     * <p>默认按偏移加载：转交{@link #getMoreData(Page)}，返回满页时以下一页的起始位置作为游标，
+     * 使开启游标分页但没有重写该方法的适配器仍能正常分页。
+     *
+     * @param page 待加载的一页，{@link Page#getRequestSize()}为请求的项数
+     * @return 本页数据
+     */
+    protected List<Data> getMoreDataByCursor(Page<Data> page) throws Exception {
+        List<Data> items = getMoreData(page);
+        final int size = getResponseSize(items);
+        if (size >= page.getRequestSize() && !page.isEndOfData()) {
+            // 字符串游标可以写入磁盘缓存
+            page.setNextCursor(String.valueOf(page.getStartPosition() + size));
+        }
+        return items;
+    }
+
+    /**
+     * 偏移分页时加载一页，运行在非UI线程。默认转交{@link #onLoadMore(int, int)}或{@link #onLoadPrevious(int, int)}。
+     * 自适应分页的数据源可以重写该方法，在最后一页调用{@link Page#setEndOfData(boolean)}。
+     *
+     * @param page 待加载的一页，{@link Page#getRequestSize()}为请求的项数
+     * @return 该页数据
+     */
+    protected List<Data> getMoreData(Page<Data> page) throws Exception {
+        if (Page.KIND_PREVIOUS == page.getKind()) {
+            return onLoadPrevious(page.getStartPosition(), page.getRequestSize());
+        }
+        return onLoadMore(page.getStartPosition(), page.getRequestSize());
+    }
+
 
     protected void clickRefresh() {
         mBtnRefresh.setVisibility(View.INVISIBLE);
@@ -326,13 +1089,78 @@ public abstract class BaseListAdapter<Data> extends ImageListAdapter<Data> imple
         return null;
     }
 
+    /**
+     * 子类直接修改{@link #getData()}后调用，键索引按当前列表项重建，被移除的项之后可以重新加入
+     */
     @Override
     public void notifyDataSetChanged() {
+        rebuildItemKeys();
         super.notifyDataSetChanged();
     }
 
+    @Override
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        rebuildItemKeys();
+        super.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
+    /**
+     * 按列表项和被回收页记录的键重建键索引
+     */
+    private void rebuildItemKeys() {
+        mItemKeys.clear();
+        for (int i = 0; i < mItems.size(); i++) {
+            Data item = mItems.get(i);
+            Object key = null == item ? null : getItemKey(item);
+            if (null != key) {
+                mItemKeys.put(key, Boolean.TRUE);
+            }
+        }
+        for (int i = 0; i < mPageRanges.size(); i++) {
+            Object[] keys = mPageRanges.get(i).keys;
+            if (null == keys) {
+                continue;
+            }
+            for (Object key : keys) {
+                if (null != key) {
+                    mItemKeys.put(key, Boolean.TRUE);
+                }
+            }
+        }
+    }
+
     // ==========================================================================
     // Inner/Nested Classes
     // ==========================================================================
 
+    /**
+     * 一页数据在列表中的范围及其在数据源中的位置
+     */
+    private static class PageRange {
+        /**
+         * 重新加载后移除了已不存在的项时会变化
+         */
+        int itemStart;
+        int itemCount;
+        final int sourceStart;
+        final int requestSize;
+        boolean evicted;
+        boolean loading;
+        /**
+         * 被回收时各项的键，用于重新加载后放回原位置
+         */
+        Object[] keys;
+        /**
+         * 游标分页时请求该页使用的游标
+         */
+        final Object cursor;
+
+        PageRange(int itemStart, int itemCount, int sourceStart, int requestSize, Object cursor) {
+            this.itemStart = itemStart;
+            this.itemCount = itemCount;
+            this.sourceStart = sourceStart;
+            this.requestSize = requestSize;
+            this.cursor = cursor;
+        }
+    }
 }
@@ -0,0 +1,227 @@
+package com.zhangls.paging.listview;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 可复用位图的缓存池，供解码时通过BitmapFactory.Options.inBitmap复用内存，减少滑动时的GC。
+ * <p>按尺寸分桶：API 19以前只能复用宽高完全相同的位图，按“宽x高:格式”分桶；API 19及以后只要内存足够即可复用，
+ * 按占用字节数分桶，取不小于所需字节数的最小位图。总字节数有上限，超出时先淘汰最早放入的位图。
+ * API 11以前不支持复用，放入的位图会被直接拒绝。所有方法都是线程安全的。
+ *
+ * @version 1
+ */
+public class BitmapPool {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * API 19及以后复用的位图最多为所需大小的倍数，避免小图占用大块内存
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final int mMaxSize;
+    private int mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * API 19以前按“宽x高:格式”分桶
+     */
+    private final Map<String, LinkedList<Bitmap>> mExactBuckets = new HashMap<String, LinkedList<Bitmap>>();
+    /**
+     * API 19及以后按字节数分桶
+     */
+    private final TreeMap<Integer, LinkedList<Bitmap>> mSizeBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    /**
+     * 池中的全部位图，按放入的先后顺序
+     */
+    private final LinkedList<Bitmap> mOrder = new LinkedList<Bitmap>();
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+
+    /**
+     * @param maxSize 池中位图的总字节数上限
+     */
+    public BitmapPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 当前系统是否支持位图复用
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * 获取池中位图的总字节数
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    public synchronized int getCount() {
+        return mOrder.size();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 放入一个不再显示、也不在内存缓存中的位图
+     *
+     * @return 是否被放入池中。不可变、已回收或超过容量的位图不会放入
+     */
+    public synchronized boolean put(Bitmap bitmap) {
+        if (!isSupported() || null == bitmap || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return false;
+        }
+        final int size = getBitmapSize(bitmap);
+        if (size > mMaxSize) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            LinkedList<Bitmap> bucket = mSizeBuckets.get(size);
+            if (null == bucket) {
+                bucket = new LinkedList<Bitmap>();
+                mSizeBuckets.put(size, bucket);
+            }
+            bucket.add(bitmap);
+        } else {
+            String key = exactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            LinkedList<Bitmap> bucket = mExactBuckets.get(key);
+            if (null == bucket) {
+                bucket = new LinkedList<Bitmap>();
+                mExactBuckets.put(key, bucket);
+            }
+            bucket.add(bitmap);
+        }
+        mOrder.add(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+        return true;
+    }
+
+    /**
+     * 取出一个可以用于解码指定尺寸图片的位图
+     *
+     * @return 可复用的位图，没有时返回null
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            final int needed = width * height * getBytesPerPixel(config);
+            Map.Entry<Integer, LinkedList<Bitmap>> entry = mSizeBuckets.ceilingEntry(needed);
+            if (null != entry && entry.getKey() <= needed * MAX_SIZE_MULTIPLE) {
+                bitmap = entry.getValue().removeLast();
+                if (entry.getValue().isEmpty()) {
+                    mSizeBuckets.remove(entry.getKey());
+                }
+            }
+        } else if (isSupported()) {
+            String key = exactKey(width, height, config);
+            LinkedList<Bitmap> bucket = mExactBuckets.get(key);
+            if (null != bucket) {
+                bitmap = bucket.removeLast();
+                if (bucket.isEmpty()) {
+                    mExactBuckets.remove(key);
+                }
+            }
+        }
+        if (null == bitmap) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        mOrder.remove(bitmap);
+        mSize -= getBitmapSize(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * 清空缓存池，如收到内存不足通知时
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(int maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            Bitmap bitmap = mOrder.removeFirst();
+            final int size = getBitmapSize(bitmap);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                LinkedList<Bitmap> bucket = mSizeBuckets.get(size);
+                bucket.remove(bitmap);
+                if (bucket.isEmpty()) {
+                    mSizeBuckets.remove(size);
+                }
+            } else {
+                String key = exactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+                LinkedList<Bitmap> bucket = mExactBuckets.get(key);
+                bucket.remove(bitmap);
+                if (bucket.isEmpty()) {
+                    mExactBuckets.remove(key);
+                }
+            }
+            mSize -= size;
+            mEvictionCount++;
+        }
+    }
+
+    private static String exactKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    /**
+     * 获取位图占用的字节数
+     */
+    static int getBitmapSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (Bitmap.Config.ALPHA_8 == config) {
+            return 1;
+        }
+        if (Bitmap.Config.RGB_565 == config || Bitmap.Config.ARGB_4444 == config) {
+            return 2;
+        }
+        return 4;
+    }
+}
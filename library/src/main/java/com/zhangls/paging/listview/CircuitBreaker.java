@@ -0,0 +1,249 @@
+package com.zhangls.paging.listview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 数据源的熔断器，由使用同一数据源的所有适配器共享。连续失败达到阈值后断开，断开期间不再请求数据源；
+ * 经过一段时间后半开，只放行一个探测请求，成功则闭合、失败则重新断开。
+ * <p>作为{@link LoadGate.Condition}加入适配器的加载闸门，可以放行时通知监听者，被暂存的加载随之自动恢复。
+ * 可以在任意线程调用，监听者在UI线程回调。
+ *
+ * @version 1
+ */
+public class CircuitBreaker implements LoadGate.Condition {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    /**
+     * 默认断开前连续失败的次数
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    /**
+     * 默认断开的时长（毫秒）
+     */
+    public static final int DEFAULT_OPEN_TIMEOUT = 30 * 1000;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private static final Map<String, CircuitBreaker> sBreakers = new HashMap<String, CircuitBreaker>();
+
+    private final int mFailureThreshold;
+    private final long mOpenTimeout;
+    private int mState = STATE_CLOSED;
+    private int mFailureCount;
+    /**
+     * 断开状态结束的时间
+     */
+    private long mOpenUntil;
+    /**
+     * 半开状态下是否已放行探测请求
+     */
+    private boolean mProbing;
+    /**
+     * 监听者，由注册者持有强引用，受this保护
+     */
+    private final Map<Listener, Boolean> mListeners = new WeakHashMap<Listener, Boolean>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mNotifyTask = new Runnable() {
+        @Override
+        public void run() {
+            notifyListeners();
+        }
+    };
+    /**
+     * 断开结束时通知
+     */
+    private final Runnable mReopenTask = new Runnable() {
+        @Override
+        public void run() {
+            notifyListeners();
+        }
+    };
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_TIMEOUT);
+    }
+
+    /**
+     * @param failureThreshold 断开前连续失败的次数
+     * @param openTimeout      断开的时长（毫秒），之后放行一个探测请求
+     */
+    public CircuitBreaker(int failureThreshold, long openTimeout) {
+        mFailureThreshold = Math.max(1, failureThreshold);
+        mOpenTimeout = openTimeout;
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取数据源对应的熔断器，同一进程内相同sourceKey返回同一实例
+     *
+     * @param sourceKey 数据源的唯一标识，如接口的主机名
+     */
+    public static CircuitBreaker forSource(String sourceKey) {
+        synchronized (sBreakers) {
+            CircuitBreaker breaker = sBreakers.get(sourceKey);
+            if (null == breaker) {
+                breaker = new CircuitBreaker();
+                sBreakers.put(sourceKey, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * 指定数据源使用的熔断器，如需要不同的阈值时
+     */
+    public static void setForSource(String sourceKey, CircuitBreaker breaker) {
+        synchronized (sBreakers) {
+            sBreakers.put(sourceKey, breaker);
+        }
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * 当前是否会放行请求（不占用半开状态的探测名额）
+     */
+    @Override
+    public synchronized boolean isSatisfied() {
+        switch (mState) {
+            case STATE_OPEN:
+                return SystemClock.uptimeMillis() >= mOpenUntil;
+            case STATE_HALF_OPEN:
+                return !mProbing;
+            default:
+                return true;
+        }
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    public synchronized void addListener(Listener listener) {
+        mListeners.put(listener, Boolean.TRUE);
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 请求数据源前调用
+     *
+     * @return 是否放行。放行后必须调用{@link #onSuccess()}、{@link #onFailure()}或{@link #onCancel()}之一
+     */
+    public synchronized boolean tryAcquire() {
+        if (STATE_OPEN == mState && SystemClock.uptimeMillis() >= mOpenUntil) {
+            mState = STATE_HALF_OPEN;
+            mProbing = false;
+        }
+        if (STATE_HALF_OPEN == mState) {
+            if (mProbing) {
+                return false;
+            }
+            mProbing = true;
+            return true;
+        }
+        return STATE_CLOSED == mState;
+    }
+
+    /**
+     * 请求成功，闭合熔断器
+     */
+    public void onSuccess() {
+        synchronized (this) {
+            mFailureCount = 0;
+            mProbing = false;
+            if (STATE_CLOSED == mState) {
+                return;
+            }
+            mState = STATE_CLOSED;
+        }
+        mHandler.removeCallbacks(mReopenTask);
+        mHandler.post(mNotifyTask);
+    }
+
+    /**
+     * 请求失败，连续失败达到阈值或探测失败时断开
+     */
+    public void onFailure() {
+        synchronized (this) {
+            mProbing = false;
+            mFailureCount++;
+            if (STATE_HALF_OPEN != mState && mFailureCount < mFailureThreshold) {
+                return;
+            }
+            mState = STATE_OPEN;
+            mOpenUntil = SystemClock.uptimeMillis() + mOpenTimeout;
+        }
+        // 断开结束时通知，等待中的加载重新检查
+        mHandler.removeCallbacks(mReopenTask);
+        mHandler.postDelayed(mReopenTask, mOpenTimeout);
+    }
+
+    /**
+     * 放行的请求被取消，不计入成功或失败
+     */
+    public void onCancel() {
+        synchronized (this) {
+            if (!mProbing) {
+                return;
+            }
+            mProbing = false;
+        }
+        mHandler.post(mNotifyTask);
+    }
+
+    private void notifyListeners() {
+        List<Listener> listeners;
+        synchronized (this) {
+            listeners = new ArrayList<Listener>(mListeners.keySet());
+        }
+        for (Listener listener : listeners) {
+            listener.onAvailable(this);
+        }
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+
+    /**
+     * 熔断器可能重新放行请求时回调
+     */
+    public interface Listener {
+        public void onAvailable(CircuitBreaker breaker);
+    }
+
+    /**
+     * 熔断器断开，请求没有发往数据源
+     */
+    public static class OpenException extends IOException {
+        public OpenException() {
+            super("Circuit breaker is open");
+        }
+    }
+}
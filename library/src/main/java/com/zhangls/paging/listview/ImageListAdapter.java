@@ -1,14 +1,22 @@
 package com.zhangls.paging.listview;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.AdapterView;
 import android.widget.AdapterView.OnItemSelectedListener;
+import android.widget.ImageView;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -26,12 +34,44 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
     // ==========================================================================
     // Constants
     // ==========================================================================
-    private static final int DEFAULT_DISPLAYED_ITEMS_COUNT = 8;
+    /**
+     * 快速滑动时缩略图相对原图尺寸的缩小倍数
+     */
+    private static final int THUMBNAIL_SCALE = 4;
+    /**
+     * 预取请求的优先级基数，低于所有已绑定的列表项
+     */
+    private static final int PREFETCH_PRIORITY = 1 << 16;
+    /**
+     * 默认每次停止滑动后预取的内存预算：4MB
+     */
+    public static final int DEFAULT_PREFETCH_BYTES = 4 * 1024 * 1024;
+    /**
+     * 尚不知道显示尺寸、只下载到磁盘的预取，每张图片计入预算的字节数
+     */
+    private static final int UNKNOWN_SIZE_PREFETCH_BYTES = 64 * 1024;
+    /**
+     * 图片调度暂停后检查列表状态的间隔（毫秒）
+     */
+    private static final int IMAGE_PAUSE_CHECK_INTERVAL = 2000;
 
     // ==========================================================================
     // Fields
     // ==========================================================================
-    private List<ImageItem> mDisplayedItems;
+    /**
+     * 每个holder最近一次绑定的位置与版本号，以及当前在屏幕上的holder
+     */
+    private final VisibleHolderRegistry mHolders = new VisibleHolderRegistry();
+
+    /**
+     * 预先创建、尚未使用的holder，按列表内容项类型分组
+     */
+    private final SparseArray<List<ImageItem>> mHolderPool = new SparseArray<List<ImageItem>>();
+    /**
+     * 每种类型预先创建的holder数，0表示不预先创建
+     */
+    private int mPrewarmCount;
+    private MessageQueue.IdleHandler mPrewarmHandler;
 
     private int mScrollState = OnScrollListener.SCROLL_STATE_IDLE;
 
@@ -42,12 +82,75 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
 
     private boolean mRefreshImageOnFling = false;
 
+    /**
+     * 快速滑动时是否加载缩略图
+     */
+    private boolean mThumbnailOnFling = false;
+
+    /**
+     * 图片加载框架，为空时由holder自己加载图片
+     */
+    private ImagePipeline mImagePipeline;
+    /**
+     * 快速滑动时是否暂停了图片调度
+     */
+    private boolean mImagePaused;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 列表在快速滑动中离开窗口时收不到停止滑动的通知，定期检查，避免共享的加载框架一直暂停
+     */
+    private final Runnable mPauseCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (!mImagePaused) {
+                return;
+            }
+            if (null != mAbsListView) {
+                if (null != mAbsListView.getWindowToken()
+                        && OnScrollListener.SCROLL_STATE_FLING == mScrollState) {
+                    // 仍在快速滑动
+                    mHandler.postDelayed(this, IMAGE_PAUSE_CHECK_INTERVAL);
+                    return;
+                }
+                mScrollState = OnScrollListener.SCROLL_STATE_IDLE;
+                resetScrollVelocity();
+            }
+            // 没有列表（如RecyclerView）时无法判断，超过检查间隔即恢复
+            setImagePaused(false);
+        }
+    };
+
+    /**
+     * 当前可见区域，用于计算图片加载的优先级
+     */
+    private int mFirstVisible;
+    private int mVisibleCount;
+
+    /**
+     * 停止滑动时预取图片的行数，0表示不预取
+     */
+    private int mPrefetchRows;
+    private int mPrefetchBytes = DEFAULT_PREFETCH_BYTES;
+    /**
+     * 滑动期间加载完成、还未预取的页的起始位置，-1表示没有
+     */
+    private int mPendingPrefetchStart = -1;
+    /**
+     * 最近绑定的列表项中每张图片的显示尺寸，预取时按该尺寸解码
+     */
+    private final SparseIntArray mImageWidths = new SparseIntArray();
+    private final SparseIntArray mImageHeights = new SparseIntArray();
+
+    /**
+     * 最近一次回收的列表项高度，用作占位视图高度
+     */
+    private int mLastItemHeight;
+
     // ==========================================================================
     // Constructors
     // ==========================================================================
     public ImageListAdapter(Context context) {
         super(context);
-        mDisplayedItems = new ArrayList<ImageItem>(DEFAULT_DISPLAYED_ITEMS_COUNT);
     }
 
     // ==========================================================================
@@ -61,6 +164,10 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
         return mScrollState;
     }
 
+    public ImagePipeline getImagePipeline() {
+        return mImagePipeline;
+    }
+
 
     // ==========================================================================
     // Setters
@@ -79,6 +186,43 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
         mRefreshImageOnFling = refresh;
     }
 
+    /**
+     * 开启后快速滑动时加载低分辨率的缩略图（内存中已有原图时直接显示原图），停止后可见的列表项再替换为原图。
+     * 需要设置{@link #setImagePipeline(ImagePipeline)}，缩略图地址由{@link ThumbnailImageItem}提供，
+     * 否则按原图地址缩小解码。
+     *
+     * @param thumbnail 是否在快速滑动时加载缩略图
+     */
+    public void setThumbnailOnFling(boolean thumbnail) {
+        mThumbnailOnFling = thumbnail;
+    }
+
+    /**
+     * 开启空闲时的图片预取：列表停止滑动后，预取可见区域之后rows行的图片；新的一页加载完成时，预取其前rows行的图片。
+     * 滑动期间加载完成的页在停止滑动时预取。预取的图片按同一位置最近显示的尺寸解码进内存缓存，
+     * 每次停止滑动后、每个新加载的页的解码总量各不超过maxBytes，同时进行的预取数由{@link ImagePipeline#setMaxPrefetchRunning(int)}限制；开始滑动时取消未完成的预取。
+     * 需要设置{@link #setImagePipeline(ImagePipeline)}并重写{@link #getPrefetchImageCount(int)}和
+     * {@link #getPrefetchImageUrl(int, int)}。
+     *
+     * @param rows     预取的行数，0表示关闭
+     * @param maxBytes 每次停止滑动后、每个新加载的页预取的内存预算（字节）
+     */
+    public void setImagePrefetch(int rows, int maxBytes) {
+        mPrefetchRows = rows;
+        mPrefetchBytes = maxBytes;
+    }
+
+    /**
+     * 设置图片加载框架。设置后实现了{@link UrlImageItem}的holder由框架加载图片：按与可见区域的距离排定优先级，
+     * 快速滑动时暂停调度（内存缓存中的图片仍立即显示），停止后从可见的列表项开始加载。
+     *
+     * @param pipeline 图片加载框架，如{@link ImagePipeline#getDefault(Context)}
+     */
+    public void setImagePipeline(ImagePipeline pipeline) {
+        setImagePaused(false);
+        mImagePipeline = pipeline;
+    }
+
     // ==========================================================================
     // Methods
     // ==========================================================================
@@ -87,22 +231,136 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
         final ImageItem holder;
         View view;
         if (null != convertView && convertView.getTag() instanceof ImageItem) {
-            holder = getHolder(position, (ImageItem) convertView.getTag());
+            ImageItem convertHolder = (ImageItem) convertView.getTag();
+            VisibleHolderRegistry.Entry entry = mHolders.get(convertHolder);
+            if (null != entry && entry.position == position && entry.version == getBindVersion(position)) {
+                // 该位置内容未变化，跳过重新绑定
+                mHolders.show(entry);
+                if (entry.imageCancelled) {
+                    entry.imageCancelled = false;
+                    loadImage(convertHolder);
+                }
+                return convertView;
+            }
+            holder = getHolder(position, convertHolder);
+            if (holder != convertHolder) {
+                // 子类没有复用convertView上的holder
+                mHolders.forget(convertHolder);
+            }
         } else {
-            holder = getHolder(position, null);
+            holder = getHolder(position, obtainPooledHolder(getContentItemViewType(position)));
         }
         if (null == holder) {
             return new View(getContext());
         }
         view = holder.getRootView();
         view.setTag(holder);
-        mDisplayedItems.add(holder);
+        mHolders.bind(holder, position, getBindVersion(position));
         loadImage(holder);
         return view;
     }
 
     protected abstract ImageItem getHolder(int position, ImageItem convertHolder);
 
+    /**
+     * 创建一个未绑定数据的holder，用于{@link #prewarmHolders(int)}预先创建。预先创建的holder会作为
+     * {@link #getHolder(int, ImageItem)}的convertHolder传入，再绑定数据。默认返回null，即不支持预先创建。
+     * <p>调用在UI线程空闲时，此时没有父视图，根View的布局参数需要自行设置。
+     *
+     * @param viewType 列表内容项类型，见{@link #getContentItemViewType(int)}
+     * @return 新建的holder
+     */
+    protected ImageItem createHolder(int viewType) {
+        return null;
+    }
+
+    /**
+     * 在UI线程空闲时为每种列表内容项类型预先创建count个holder，首屏和新类型的列表项绑定时直接使用，
+     * 不必在布局过程中同步创建。每次空闲只创建一个，被取用后同样在空闲时补足。需要重写{@link #createHolder(int)}。
+     * 调用在UI线程。
+     *
+     * @param count 每种类型预先创建的holder数，0表示停止并清空已创建的holder
+     */
+    public void prewarmHolders(int count) {
+        mPrewarmCount = count;
+        if (count <= 0) {
+            stopPrewarm();
+            mHolderPool.clear();
+        } else {
+            schedulePrewarm();
+        }
+    }
+
+    /**
+     * 获取某种类型已预先创建、尚未使用的holder数
+     */
+    public int getPooledHolderCount(int viewType) {
+        List<ImageItem> holders = mHolderPool.get(viewType);
+        return null == holders ? 0 : holders.size();
+    }
+
+    private ImageItem obtainPooledHolder(int viewType) {
+        List<ImageItem> holders = mHolderPool.get(viewType);
+        if (null == holders || holders.isEmpty()) {
+            return null;
+        }
+        ImageItem holder = holders.remove(holders.size() - 1);
+        schedulePrewarm();
+        return holder;
+    }
+
+    private void schedulePrewarm() {
+        if (mPrewarmCount > 0 && null == mPrewarmHandler) {
+            mPrewarmHandler = new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    if (this != mPrewarmHandler || !prewarmOneHolder()) {
+                        if (this == mPrewarmHandler) {
+                            mPrewarmHandler = null;
+                        }
+                        return false;
+                    }
+                    return true;
+                }
+            };
+            Looper.myQueue().addIdleHandler(mPrewarmHandler);
+        }
+    }
+
+    private void stopPrewarm() {
+        if (null != mPrewarmHandler) {
+            Looper.myQueue().removeIdleHandler(mPrewarmHandler);
+            mPrewarmHandler = null;
+        }
+    }
+
+    /**
+     * 为数量不足的第一种类型创建一个holder
+     *
+     * @return 是否还需要继续创建
+     */
+    private boolean prewarmOneHolder() {
+        final int typeCount = getItemViewTypeCount();
+        for (int type = VIEW_TYPE_ITEM; type < VIEW_TYPE_ITEM + typeCount; type++) {
+            List<ImageItem> holders = mHolderPool.get(type);
+            if (null != holders && holders.size() >= mPrewarmCount) {
+                continue;
+            }
+            ImageItem holder = createHolder(type);
+            if (null == holder) {
+                // 不支持预先创建
+                return false;
+            }
+            if (null == holders) {
+                holders = new ArrayList<ImageItem>(mPrewarmCount);
+                mHolderPool.put(type, holders);
+            }
+            holders.add(holder);
+            return true;
+        }
+        return false;
+    }
+
     /**
      * 规定是否显示图标。子类可重写用于控制图标的显示与加载。当返回false时，图标不会显示，也不会加载。
      *
@@ -120,7 +378,13 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
      * @param item
      */
     protected void loadImage(ImageItem item) {
-        item.loadImages();
+        if (null != mImagePipeline && item instanceof UrlImageItem) {
+            if (shouldDisplayImage()) {
+                loadUrlImages((UrlImageItem) item);
+            }
+        } else {
+            item.loadImages();
+        }
     }
 
     /**
@@ -129,7 +393,201 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
      * @param item
      */
     protected void cancelLoadImage(ImageItem item) {
-        item.cancelLoadImages();
+        if (null != mImagePipeline && item instanceof UrlImageItem) {
+            UrlImageItem urlItem = (UrlImageItem) item;
+            for (int i = 0; i < urlItem.getImageCount(); i++) {
+                ImageView imageView = urlItem.getImageView(i);
+                if (null != imageView) {
+                    mImagePipeline.cancel(imageView);
+                }
+            }
+        } else {
+            item.cancelLoadImages();
+        }
+    }
+
+    /**
+     * 返回某位置的数据需要显示的图片数量，用于在绑定之前预取。默认返回0，即不预取。
+     *
+     * @param position 列表项位置
+     * @return 图片数量，与该位置holder的{@link UrlImageItem#getImageCount()}一致
+     */
+    protected int getPrefetchImageCount(int position) {
+        return 0;
+    }
+
+    /**
+     * 返回某位置的数据第index张图片的地址，用于在绑定之前预取
+     *
+     * @param position 列表项位置
+     * @param index    图片序号
+     * @return 图片地址，与该位置holder的{@link UrlImageItem#getImageUrl(int)}一致，为空表示不预取
+     */
+    protected String getPrefetchImageUrl(int position, int index) {
+        return null;
+    }
+
+    /**
+     * 预取[from, to)之间列表项的图片，超出预算时停止
+     *
+     * @param budget 可用的预算（字节）
+     * @return 本次预取的字节数（估算）
+     */
+    private int prefetchImages(int from, int to, int budget) {
+        if (null == mImagePipeline || mPrefetchRows <= 0 || !shouldDisplayImage()) {
+            return 0;
+        }
+        int spent = 0;
+        to = Math.min(to, getItemCount());
+        for (int position = Math.max(0, from); position < to; position++) {
+            final int count = getPrefetchImageCount(position);
+            for (int i = 0; i < count; i++) {
+                String url = getPrefetchImageUrl(position, i);
+                if (null == url) {
+                    continue;
+                }
+                final int width = mImageWidths.get(i);
+                final int height = mImageHeights.get(i);
+                // 尺寸未知时只下载，按估计值计入预算，预取的数量同样受限
+                final int bytes = width > 0 && height > 0 ? width * height * 4 : UNKNOWN_SIZE_PREFETCH_BYTES;
+                if (spent + bytes > budget) {
+                    return spent;
+                }
+                if (mImagePipeline.prefetch(url, width, height, PREFETCH_PRIORITY + getImagePriority(position), this)) {
+                    spent += bytes;
+                }
+            }
+        }
+        return spent;
+    }
+
+    @Override
+    protected void onPageLoaded(Page<Data> page) {
+        final int start = getItemCount();
+        super.onPageLoaded(page);
+        if (OnScrollListener.SCROLL_STATE_IDLE == mScrollState) {
+            // 新加载的页有自己的预算，不受停止滑动后的预取影响
+            prefetchImages(start, start + mPrefetchRows, mPrefetchBytes);
+        } else if (mPendingPrefetchStart < 0 && mPrefetchRows > 0) {
+            mPendingPrefetchStart = start;
+        }
+    }
+
+    @Override
+    public void release() {
+        super.release();
+        stopPrewarm();
+        mHolderPool.clear();
+        // 快速滑动中被释放时不会再收到停止滑动的通知，不能让共享的加载框架一直暂停
+        setImagePaused(false);
+        mPendingPrefetchStart = -1;
+        if (null != mImagePipeline) {
+            mImagePipeline.cancelPrefetch(this);
+            clearUrlImages();
+        }
+    }
+
+    /**
+     * 清除可见列表项显示的图片，位图可以立即回到位图池
+     */
+    private void clearUrlImages() {
+        for (int i = 0; i < mHolders.getVisibleCount(); i++) {
+            ImageItem holder = mHolders.getVisible(i).holder;
+            if (!(holder instanceof UrlImageItem)) {
+                continue;
+            }
+            UrlImageItem urlItem = (UrlImageItem) holder;
+            for (int j = 0; j < urlItem.getImageCount(); j++) {
+                ImageView imageView = urlItem.getImageView(j);
+                if (null != imageView) {
+                    mImagePipeline.clear(imageView);
+                }
+            }
+        }
+    }
+
+    private void loadUrlImages(UrlImageItem item) {
+        final int priority = getImagePriority(item);
+        final boolean thumbnail = mThumbnailOnFling && OnScrollListener.SCROLL_STATE_FLING == mScrollState;
+        for (int i = 0; i < item.getImageCount(); i++) {
+            ImageView imageView = item.getImageView(i);
+            if (null == imageView) {
+                continue;
+            }
+            String url = item.getImageUrl(i);
+            if (imageView.getWidth() > 0 && imageView.getHeight() > 0) {
+                mImageWidths.put(i, imageView.getWidth());
+                mImageHeights.put(i, imageView.getHeight());
+            }
+            if (null == url) {
+                mImagePipeline.cancel(imageView);
+            } else if (!thumbnail) {
+                mImagePipeline.load(url, imageView, false, priority);
+            } else if (!mImagePipeline.load(url, imageView, true, priority)) {
+                loadThumbnail(item, i, url, imageView, priority);
+            }
+        }
+    }
+
+    private void loadThumbnail(UrlImageItem item, int index, String url, ImageView imageView, int priority) {
+        String thumbnailUrl = item instanceof ThumbnailImageItem ? ((ThumbnailImageItem) item).getThumbnailUrl(index)
+                : null;
+        if (null != thumbnailUrl) {
+            mImagePipeline.load(thumbnailUrl, imageView, false, priority);
+        } else {
+            mImagePipeline.load(url, imageView, Math.max(1, mImagePipeline.getTargetWidth(imageView) / THUMBNAIL_SCALE),
+                    Math.max(1, mImagePipeline.getTargetHeight(imageView) / THUMBNAIL_SCALE), false, priority);
+        }
+    }
+
+    /**
+     * 返回某位置列表项图片的加载优先级，越小越先加载。默认为与可见区域的距离（行数），可见的列表项为0。
+     *
+     * @param position 列表项位置
+     * @return 优先级
+     */
+    protected int getImagePriority(int position) {
+        if (position < mFirstVisible) {
+            return mFirstVisible - position;
+        }
+        final int lastVisible = mFirstVisible + mVisibleCount - 1;
+        return position > lastVisible ? position - lastVisible : 0;
+    }
+
+    private void updateImagePriorities() {
+        for (int i = 0; i < mHolders.getVisibleCount(); i++) {
+            VisibleHolderRegistry.Entry entry = mHolders.getVisible(i);
+            if (!(entry.holder instanceof UrlImageItem)) {
+                continue;
+            }
+            UrlImageItem urlItem = (UrlImageItem) entry.holder;
+            final int priority = getImagePriority(entry.position);
+            for (int j = 0; j < urlItem.getImageCount(); j++) {
+                ImageView imageView = urlItem.getImageView(j);
+                if (null != imageView) {
+                    mImagePipeline.setPriority(imageView, priority);
+                }
+            }
+        }
+    }
+
+    private void setImagePaused(boolean paused) {
+        if (null == mImagePipeline || paused == mImagePaused) {
+            return;
+        }
+        mImagePaused = paused;
+        if (paused) {
+            mImagePipeline.pause();
+            mHandler.postDelayed(mPauseCheck, IMAGE_PAUSE_CHECK_INTERVAL);
+        } else {
+            mHandler.removeCallbacks(mPauseCheck);
+            mImagePipeline.resume();
+        }
+    }
+
+    @Override
+    protected int getPlaceholderHeight() {
+        return mLastItemHeight > 0 ? mLastItemHeight : super.getPlaceholderHeight();
     }
 
     public boolean shouldRefreshImage() {
@@ -144,20 +602,49 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
         Object tag = view.getTag();
         if (tag instanceof ImageItem) {
             ImageItem holder = (ImageItem) tag;
+            if (view.getHeight() > 0) {
+                mLastItemHeight = view.getHeight();
+            }
             // 取消该view的图片下载任务
             // NOTE: 此处若为item中的ImageView设置图片，会使列表明显变卡
             cancelLoadImage(holder);
-            mDisplayedItems.remove(holder);
+            mHolders.scrap(holder);
+        }
+    }
+
+    /**
+     * 忘记视图上holder的绑定记录，下次使用时一定会重新绑定。视图离开本适配器（如放入共享回收池）时调用。
+     *
+     * @param view 列表项视图
+     */
+    void forgetBinding(View view) {
+        if (null != view && view.getTag() instanceof ImageItem) {
+            mHolders.forget((ImageItem) view.getTag());
         }
     }
 
+    private int getImagePriority(ImageItem holder) {
+        VisibleHolderRegistry.Entry entry = mHolders.get(holder);
+        return null == entry ? 0 : getImagePriority(entry.position);
+    }
+
     private void refreshAllImage() {
         if (shouldDisplayImage()/* && shouldRefreshImage() */) {
             // notifyDataSetChanged();
-            List<ImageItem> displayedItems = new ArrayList<ImageItem>(mDisplayedItems);
-            for (int i = 0; i < displayedItems.size(); i++) {
-                ImageItem holder = displayedItems.get(i);
-                loadImage(holder);
+            final int count = mHolders.getVisibleCount();
+            List<VisibleHolderRegistry.Entry> entries = new ArrayList<VisibleHolderRegistry.Entry>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(mHolders.getVisible(i));
+            }
+            // 从可见的列表项开始加载
+            Collections.sort(entries, new Comparator<VisibleHolderRegistry.Entry>() {
+                @Override
+                public int compare(VisibleHolderRegistry.Entry lhs, VisibleHolderRegistry.Entry rhs) {
+                    return getImagePriority(lhs.position) - getImagePriority(rhs.position);
+                }
+            });
+            for (int i = 0; i < entries.size(); i++) {
+                loadImage(entries.get(i).holder);
             }
         }
     }
@@ -181,15 +668,47 @@ public abstract class ImageListAdapter<Data> extends AsyncLoadingAdapter<Data> i
         // notifyDataSetChanged();
         // }
         // }
+        if (OnScrollListener.SCROLL_STATE_IDLE == scrollState) {
+            resetScrollVelocity();
+        }
+        if (null != mImagePipeline && OnScrollListener.SCROLL_STATE_IDLE == oldScrollState
+                && OnScrollListener.SCROLL_STATE_IDLE != scrollState) {
+            mImagePipeline.cancelPrefetch(this);
+        }
+        if (OnScrollListener.SCROLL_STATE_FLING == scrollState && !mRefreshImageOnFling && !mThumbnailOnFling) {
+            setImagePaused(true);
+        }
         if (OnScrollListener.SCROLL_STATE_FLING == oldScrollState
                 && (OnScrollListener.SCROLL_STATE_IDLE == scrollState
                 || OnScrollListener.SCROLL_STATE_TOUCH_SCROLL == scrollState)) {
             refreshAllImage();
+            if (null != mImagePipeline) {
+                updateImagePriorities();
+            }
+            setImagePaused(false);
+        }
+        if (OnScrollListener.SCROLL_STATE_IDLE == scrollState && OnScrollListener.SCROLL_STATE_IDLE != oldScrollState) {
+            final int lastVisible = mFirstVisible + mVisibleCount;
+            prefetchImages(lastVisible, lastVisible + mPrefetchRows, mPrefetchBytes);
+            if (mPendingPrefetchStart >= 0) {
+                // 滑动期间加载完成的页
+                final int start = Math.max(mPendingPrefetchStart, lastVisible + mPrefetchRows);
+                prefetchImages(start, mPendingPrefetchStart + mPrefetchRows, mPrefetchBytes);
+                mPendingPrefetchStart = -1;
+            }
         }
     }
 
     @Override
     public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        trackScrollPosition(firstVisibleItem);
+        if (firstVisibleItem != mFirstVisible || visibleItemCount != mVisibleCount) {
+            mFirstVisible = firstVisibleItem;
+            mVisibleCount = visibleItemCount;
+            if (null != mImagePipeline) {
+                updateImagePriorities();
+            }
+        }
     }
 
     @Override
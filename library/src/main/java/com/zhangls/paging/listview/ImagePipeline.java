@@ -0,0 +1,1061 @@
+package com.zhangls.paging.listview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 列表图片的加载框架：按字节数限制容量的内存缓存、磁盘缓存、固定线程数的解码线程池和下载线程池。
+ * <p>图片按目标ImageView的尺寸缩小解码；相同地址和尺寸的并发请求合并为一次解码，相同地址的并发下载合并为一次下载。
+ * <p>请求先进入等待队列，按优先级（通常是列表项与可见区域的距离）从小到大发出，同时进行的请求数不超过线程数之和；
+ * 调度可以暂停（如快速滑动时），恢复后按最新的优先级发出。还在队列中的请求取消后不会再下载或解码。
+ * <p>设置了{@link BitmapPool}时，解码复用池中的位图。位图按显示它的ImageView计数引用，
+ * 既不在内存缓存中、也没有ImageView显示时回到池中。ImageView重新绑定了其他图片、调用了{@link #clear(ImageView)}、
+ * 或者随页面销毁被垃圾回收后，都不再计为显示。
+ * 除特别说明外，方法都在UI线程调用，结果也在UI线程设置到ImageView上。
+ *
+ * @version 1
+ */
+public class ImagePipeline {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认解码线程数
+     */
+    public static final int DEFAULT_DECODE_THREADS = 2;
+    /**
+     * 默认下载线程数
+     */
+    public static final int DEFAULT_FETCH_THREADS = 3;
+    /**
+     * 默认磁盘缓存容量：32MB
+     */
+    public static final long DEFAULT_DISK_CACHE_SIZE = 32 * 1024 * 1024L;
+    /**
+     * 默认同时进行的预取请求数
+     */
+    public static final int DEFAULT_MAX_PREFETCH_RUNNING = 1;
+
+    private static final int QUEUE_CAPACITY = 128;
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+    private static final int READ_TIMEOUT = 20 * 1000;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String DISK_CACHE_DIR = "paging-images";
+    private static final String FILE_SCHEME = "file://";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String TAG = ImagePipeline.class.getSimpleName();
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private static ImagePipeline sDefault;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final BitmapPool mBitmapPool;
+    private final File mDiskCacheDir;
+    private final long mDiskCacheSize;
+    /**
+     * 磁盘缓存当前占用的字节数，-1表示尚未统计。受this保护
+     */
+    private long mDiskCacheBytes = -1;
+    private final LoaderExecutor mDecodeExecutor;
+    private final LoaderExecutor mFetchExecutor;
+    private final int mScreenWidth;
+    private final int mScreenHeight;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 正在进行的请求，按“地址@尺寸”合并。只在UI线程访问
+     */
+    private final Map<String, ImageRequest> mRequests = new HashMap<String, ImageRequest>();
+    /**
+     * 每个ImageView当前等待的请求。只在UI线程访问
+     */
+    private final Map<ImageView, ImageRequest> mTargets = new WeakHashMap<ImageView, ImageRequest>();
+    /**
+     * 每个ImageView最近一次加载的缓存键，重新绑定相同的图片时复用。只在UI线程访问
+     */
+    private final Map<ImageView, ViewKey> mViewKeys = new WeakHashMap<ImageView, ViewKey>();
+    /**
+     * 正在下载的地址及等待该下载的请求
+     */
+    private final Map<String, List<ImageRequest>> mFetching = new HashMap<String, List<ImageRequest>>();
+    /**
+     * 等待调度的请求。只在UI线程访问
+     */
+    private final List<ImageRequest> mPending = new ArrayList<ImageRequest>();
+    private final int mMaxRunning;
+    private int mRunningCount;
+    private int mPauseCount;
+    private int mMaxPrefetchRunning = DEFAULT_MAX_PREFETCH_RUNNING;
+    private int mPrefetchRunningCount;
+    /**
+     * 内存缓存中或正在显示的位图的引用情况，只在设置了位图池时使用
+     */
+    private final Map<Bitmap, BitmapRef> mBitmapRefs = new HashMap<Bitmap, BitmapRef>();
+    /**
+     * 每个ImageView当前显示的位图。只在UI线程访问
+     */
+    private final Map<ImageView, DisplayRef> mDisplayed = new WeakHashMap<ImageView, DisplayRef>();
+    /**
+     * 持有所有显示记录，ImageView被回收后记录才能进入mCollectedViews，释放它显示的位图。只在UI线程访问
+     */
+    private final Set<DisplayRef> mDisplayRefs = new HashSet<DisplayRef>();
+    private final ReferenceQueue<ImageView> mCollectedViews = new ReferenceQueue<ImageView>();
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+
+    /**
+     * 使用默认配置：内存缓存为最大堆内存的1/8，位图池为其1/4，磁盘缓存位于应用缓存目录
+     */
+    public ImagePipeline(Context context) {
+        this(context, (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8),
+                new File(context.getCacheDir(), DISK_CACHE_DIR), DEFAULT_DISK_CACHE_SIZE, DEFAULT_DECODE_THREADS,
+                DEFAULT_FETCH_THREADS);
+    }
+
+    public ImagePipeline(Context context, int memoryBytes, File diskCacheDir, long diskCacheSize, int decodeThreads,
+                         int fetchThreads) {
+        this(context, memoryBytes, diskCacheDir, diskCacheSize, decodeThreads, fetchThreads,
+                BitmapPool.isSupported() ? new BitmapPool(memoryBytes / 4) : null);
+    }
+
+    /**
+     * @param context       上下文
+     * @param memoryBytes   内存缓存容量（字节）
+     * @param diskCacheDir  磁盘缓存目录
+     * @param diskCacheSize 磁盘缓存容量（字节）
+     * @param decodeThreads 解码线程数
+     * @param fetchThreads  下载线程数
+     * @param bitmapPool    解码复用的位图池，为空时不复用
+     */
+    public ImagePipeline(Context context, int memoryBytes, File diskCacheDir, long diskCacheSize, int decodeThreads,
+                         int fetchThreads, BitmapPool bitmapPool) {
+        mMemoryCache = new LruCache<String, Bitmap>(memoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapPool.getBitmapSize(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    onUncached(oldValue);
+                }
+            }
+        };
+        mBitmapPool = bitmapPool;
+        mDiskCacheDir = diskCacheDir;
+        mDiskCacheSize = diskCacheSize;
+        mDecodeExecutor = new LoaderExecutor(decodeThreads, QUEUE_CAPACITY);
+        mFetchExecutor = new LoaderExecutor(fetchThreads, QUEUE_CAPACITY);
+        mMaxRunning = decodeThreads + fetchThreads;
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        mScreenWidth = metrics.widthPixels;
+        mScreenHeight = metrics.heightPixels;
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取进程内共享的图片加载框架
+     */
+    public static synchronized ImagePipeline getDefault(Context context) {
+        if (null == sDefault) {
+            sDefault = new ImagePipeline(context.getApplicationContext());
+        }
+        return sDefault;
+    }
+
+    /**
+     * 获取内存缓存当前占用的字节数
+     */
+    public int getMemoryCacheSize() {
+        return mMemoryCache.size();
+    }
+
+    public BitmapPool getBitmapPool() {
+        return mBitmapPool;
+    }
+
+    /**
+     * 获取正在进行的（合并后的）请求数
+     */
+    public int getPendingCount() {
+        return mRequests.size();
+    }
+
+    public boolean isPaused() {
+        return mPauseCount > 0;
+    }
+
+    public int getMaxPrefetchRunning() {
+        return mMaxPrefetchRunning;
+    }
+
+    // ==========================================================================
+    // Setters
+    // ==========================================================================
+
+    /**
+     * 替换进程内共享的图片加载框架
+     */
+    public static synchronized void setDefault(ImagePipeline pipeline) {
+        sDefault = pipeline;
+    }
+
+    /**
+     * 设置同时进行的预取请求数上限，预取不会占满全部线程
+     */
+    public void setMaxPrefetchRunning(int maxPrefetchRunning) {
+        mMaxPrefetchRunning = Math.max(1, maxPrefetchRunning);
+        dispatch();
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 加载图片并显示到ImageView上
+     *
+     * @param url  图片地址，支持http(s)和file://
+     * @param view 目标ImageView
+     * @return 图片已在内存缓存中并同步显示时返回true
+     */
+    public boolean load(String url, ImageView view) {
+        return load(url, view, false, 0);
+    }
+
+    /**
+     * 加载图片并显示到ImageView上。同一ImageView之前的请求会被取消。
+     *
+     * @param url       图片地址，支持http(s)和file://
+     * @param view      目标ImageView
+     * @param cacheOnly 为true时只从内存缓存读取，不发起下载和解码，如快速滑动时
+     * @param priority  优先级，越小越先发出，如列表项与可见区域的距离
+     * @return 图片已在内存缓存中并同步显示时返回true
+     */
+    public boolean load(String url, ImageView view, boolean cacheOnly, int priority) {
+        return load(url, view, getTargetWidth(view), getTargetHeight(view), cacheOnly, priority);
+    }
+
+    /**
+     * 按指定尺寸加载图片并显示到ImageView上，如快速滑动时加载低分辨率的缩略图。同一ImageView之前的请求会被取消。
+     *
+     * @param url       图片地址，支持http(s)和file://
+     * @param view      目标ImageView
+     * @param width     解码的目标宽度
+     * @param height    解码的目标高度
+     * @param cacheOnly 为true时只从内存缓存读取，不发起下载和解码
+     * @param priority  优先级，越小越先发出
+     * @return 图片已在内存缓存中并同步显示时返回true
+     */
+    public boolean load(String url, ImageView view, int width, int height, boolean cacheOnly, int priority) {
+        ImageRequest current = mTargets.get(view);
+        if (null != current) {
+            if (current.mWidth == width && current.mHeight == height && current.mUrl.equals(url)) {
+                current.mPriority = Math.min(current.mPriority, priority);
+                return false;
+            }
+            cancel(view);
+        }
+        final String key = getKey(view, url, width, height);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (null != bitmap) {
+            display(view, bitmap);
+            return true;
+        }
+        if (cacheOnly) {
+            return false;
+        }
+        ImageRequest request = mRequests.get(key);
+        if (null == request) {
+            request = new ImageRequest(key, url, width, height, priority);
+            mRequests.put(key, request);
+            mPending.add(request);
+        } else {
+            request.mPriority = Math.min(request.mPriority, priority);
+            // 预取的请求被列表项用上，不再随预取取消
+            request.mOwner = null;
+        }
+        request.mTargets.add(view);
+        mTargets.put(view, request);
+        dispatch();
+        return false;
+    }
+
+    /**
+     * 返回缓存键“地址@尺寸”。ImageView重新绑定相同的地址和尺寸时复用上次的键，滑动时不必每次拼接字符串
+     */
+    private String getKey(ImageView view, String url, int width, int height) {
+        ViewKey key = mViewKeys.get(view);
+        if (null == key) {
+            key = new ViewKey();
+            mViewKeys.put(view, key);
+        } else if (key.mWidth == width && key.mHeight == height && url.equals(key.mUrl)) {
+            return key.mKey;
+        }
+        key.mUrl = url;
+        key.mWidth = width;
+        key.mHeight = height;
+        key.mKey = url + '@' + width + 'x' + height;
+        return key.mKey;
+    }
+
+    /**
+     * 预取图片到缓存，不显示。宽高有效时解码进内存缓存（之后按相同尺寸显示可直接命中），否则只下载到磁盘缓存。
+     * 预取请求按优先级与普通请求一起调度，同时进行的数量受{@link #setMaxPrefetchRunning(int)}限制。
+     *
+     * @param url      图片地址
+     * @param width    解码的目标宽度，小于等于0时只下载
+     * @param height   解码的目标高度，小于等于0时只下载
+     * @param priority 优先级，应低于（大于）可见列表项的优先级
+     * @param owner    发起预取的对象，用于{@link #cancelPrefetch(Object)}
+     * @return 是否发起了新的请求，已在缓存中或正在加载时返回false
+     */
+    public boolean prefetch(String url, int width, int height, int priority, Object owner) {
+        final boolean diskOnly = width <= 0 || height <= 0;
+        final String key = diskOnly ? url + '@' : url + '@' + width + 'x' + height;
+        if (mRequests.containsKey(key) || (!diskOnly && null != mMemoryCache.get(key))) {
+            return false;
+        }
+        ImageRequest request = new ImageRequest(key, url, width, height, priority);
+        request.mOwner = owner;
+        request.mDiskOnly = diskOnly;
+        mRequests.put(key, request);
+        mPending.add(request);
+        dispatch();
+        return true;
+    }
+
+    /**
+     * 取消某对象发起的、还没有被列表项用上的预取请求
+     */
+    public void cancelPrefetch(Object owner) {
+        List<ImageRequest> cancelled = null;
+        for (ImageRequest request : mRequests.values()) {
+            if (owner == request.mOwner) {
+                if (null == cancelled) {
+                    cancelled = new ArrayList<ImageRequest>();
+                }
+                cancelled.add(request);
+            }
+        }
+        if (null == cancelled) {
+            return;
+        }
+        for (ImageRequest request : cancelled) {
+            cancelRequest(request);
+        }
+        dispatch();
+    }
+
+    /**
+     * 更新ImageView等待的请求的优先级，只影响还未发出的请求
+     */
+    public void setPriority(ImageView view, int priority) {
+        ImageRequest request = mTargets.get(view);
+        if (null != request) {
+            request.mPriority = request.mTargets.size() > 1 ? Math.min(request.mPriority, priority) : priority;
+        }
+    }
+
+    /**
+     * 暂停发出新的请求，已发出的请求不受影响。可以嵌套调用，需与{@link #resume()}成对使用
+     */
+    public void pause() {
+        mPauseCount++;
+    }
+
+    /**
+     * 恢复调度，按优先级发出等待中的请求
+     */
+    public void resume() {
+        if (mPauseCount > 0) {
+            mPauseCount--;
+        }
+        dispatch();
+    }
+
+    /**
+     * 取消ImageView正在等待的图片。合并的请求只有在所有ImageView都取消后才会真正取消。
+     */
+    public void cancel(ImageView view) {
+        ImageRequest request = mTargets.remove(view);
+        if (null == request) {
+            return;
+        }
+        request.mTargets.remove(view);
+        if (request.mTargets.isEmpty()) {
+            cancelRequest(request);
+            dispatch();
+        }
+    }
+
+    private void cancelRequest(ImageRequest request) {
+        request.mCancelled = true;
+        mRequests.remove(request.mKey);
+        if (!request.mDispatched) {
+            mPending.remove(request);
+            return;
+        }
+        Future<?> task = request.mTask;
+        if (null != task && task.cancel(false)) {
+            // 解码任务还未开始执行，不会再投递结果
+            release(request);
+        }
+    }
+
+    /**
+     * 取消ImageView等待的图片并清除它显示的图片，位图不再计为被显示。列表项视图不再使用时（如页面销毁）调用。
+     */
+    public void clear(ImageView view) {
+        cancel(view);
+        view.setImageDrawable(null);
+        if (null == mBitmapPool) {
+            return;
+        }
+        DisplayRef ref = mDisplayed.remove(view);
+        if (null != ref) {
+            mDisplayRefs.remove(ref);
+            ref.clear();
+            if (null != ref.mBitmap) {
+                releaseBitmap(ref.mBitmap);
+            }
+        }
+    }
+
+    /**
+     * 把位图放入内存缓存，之后按相同的地址和尺寸加载时直接命中
+     */
+    void putMemoryCache(String url, int width, int height, Bitmap bitmap) {
+        onCached(bitmap);
+        mMemoryCache.put(url + '@' + width + 'x' + height, bitmap);
+    }
+
+    /**
+     * 清空内存缓存，如收到内存不足通知时
+     */
+    public void clearMemoryCache() {
+        purgeCollectedViews();
+        mMemoryCache.evictAll();
+        if (null != mBitmapPool) {
+            mBitmapPool.clear();
+        }
+    }
+
+    /**
+     * 显示位图，并释放ImageView之前显示的位图。调用在UI线程
+     */
+    private void display(ImageView view, Bitmap bitmap) {
+        Drawable drawable = view.getDrawable();
+        if (!(drawable instanceof BitmapDrawable) || ((BitmapDrawable) drawable).getBitmap() != bitmap) {
+            // 重新绑定到正在显示的图片时不必重新设置
+            view.setImageBitmap(bitmap);
+        }
+        if (null == mBitmapPool) {
+            return;
+        }
+        purgeCollectedViews();
+        DisplayRef ref = mDisplayed.get(view);
+        if (null == ref) {
+            ref = new DisplayRef(view, mCollectedViews);
+            mDisplayed.put(view, ref);
+            mDisplayRefs.add(ref);
+        } else if (ref.mBitmap == bitmap) {
+            return;
+        }
+        final Bitmap previous = ref.mBitmap;
+        ref.mBitmap = bitmap;
+        acquireBitmap(bitmap);
+        if (null != previous) {
+            releaseBitmap(previous);
+        }
+    }
+
+    /**
+     * 释放已被垃圾回收的ImageView（如所在页面已销毁）显示的位图。调用在UI线程
+     */
+    private void purgeCollectedViews() {
+        DisplayRef ref;
+        while (null != (ref = (DisplayRef) mCollectedViews.poll())) {
+            mDisplayRefs.remove(ref);
+            if (null != ref.mBitmap) {
+                releaseBitmap(ref.mBitmap);
+                ref.mBitmap = null;
+            }
+        }
+    }
+
+    private void acquireBitmap(Bitmap bitmap) {
+        if (null == mBitmapPool) {
+            return;
+        }
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (null == ref) {
+                ref = new BitmapRef();
+                mBitmapRefs.put(bitmap, ref);
+            }
+            ref.mDisplayCount++;
+        }
+    }
+
+    private void releaseBitmap(Bitmap bitmap) {
+        if (null == mBitmapPool) {
+            return;
+        }
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (null == ref) {
+                return;
+            }
+            ref.mDisplayCount--;
+            if (ref.mDisplayCount > 0 || ref.mCached) {
+                return;
+            }
+            mBitmapRefs.remove(bitmap);
+        }
+        mBitmapPool.put(bitmap);
+    }
+
+    private void onCached(Bitmap bitmap) {
+        if (null == mBitmapPool) {
+            return;
+        }
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (null == ref) {
+                ref = new BitmapRef();
+                mBitmapRefs.put(bitmap, ref);
+            }
+            ref.mCached = true;
+        }
+    }
+
+    /**
+     * 位图被移出内存缓存，没有ImageView显示时放回位图池。调用在任意线程
+     */
+    private void onUncached(Bitmap bitmap) {
+        if (null == mBitmapPool) {
+            return;
+        }
+        synchronized (mBitmapRefs) {
+            BitmapRef ref = mBitmapRefs.get(bitmap);
+            if (null == ref) {
+                return;
+            }
+            ref.mCached = false;
+            if (ref.mDisplayCount > 0) {
+                return;
+            }
+            mBitmapRefs.remove(bitmap);
+        }
+        mBitmapPool.put(bitmap);
+    }
+
+    int getTargetWidth(ImageView view) {
+        if (view.getWidth() > 0) {
+            return view.getWidth();
+        }
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return null != params && params.width > 0 ? params.width : mScreenWidth;
+    }
+
+    int getTargetHeight(ImageView view) {
+        if (view.getHeight() > 0) {
+            return view.getHeight();
+        }
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        return null != params && params.height > 0 ? params.height : mScreenHeight;
+    }
+
+    /**
+     * 按优先级发出等待中的请求
+     */
+    private void dispatch() {
+        while (0 == mPauseCount && mRunningCount < mMaxRunning && !mPending.isEmpty()) {
+            final boolean prefetchAllowed = mPrefetchRunningCount < mMaxPrefetchRunning;
+            int best = -1;
+            for (int i = 0; i < mPending.size(); i++) {
+                ImageRequest request = mPending.get(i);
+                if ((prefetchAllowed || null == request.mOwner)
+                        && (best < 0 || request.mPriority < mPending.get(best).mPriority)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return;
+            }
+            ImageRequest request = mPending.remove(best);
+            request.mDispatched = true;
+            mRunningCount++;
+            if (null != request.mOwner) {
+                request.mPrefetchRunning = true;
+                mPrefetchRunningCount++;
+            }
+            submitDecode(request);
+        }
+    }
+
+    /**
+     * 已发出的请求结束，释放占用的名额。调用在UI线程
+     */
+    private void release(ImageRequest request) {
+        if (!request.mReleased) {
+            request.mReleased = true;
+            mRunningCount--;
+            if (request.mPrefetchRunning) {
+                mPrefetchRunningCount--;
+            }
+        }
+    }
+
+    private void submitDecode(ImageRequest request) {
+        try {
+            request.mTask = mDecodeExecutor.submit(new DecodeTask(request));
+        } catch (RejectedExecutionException e) {
+            deliver(request, null);
+        }
+    }
+
+    /**
+     * 相同地址的下载只进行一次，其余请求等待该下载完成。调用在解码线程
+     */
+    private void submitFetch(ImageRequest request) {
+        synchronized (mFetching) {
+            List<ImageRequest> waiting = mFetching.get(request.mUrl);
+            if (null != waiting) {
+                waiting.add(request);
+                return;
+            }
+            waiting = new ArrayList<ImageRequest>(2);
+            waiting.add(request);
+            mFetching.put(request.mUrl, waiting);
+        }
+        try {
+            // 下载可能被多个请求共享，不随单个请求取消，开始下载前再检查是否还有请求在等待
+            mFetchExecutor.execute(new FetchTask(request.mUrl));
+        } catch (RejectedExecutionException e) {
+            onFetched(request.mUrl, false);
+        }
+    }
+
+    /**
+     * 是否还有未取消的请求在等待该地址的下载
+     */
+    private boolean hasActiveWaiter(String url) {
+        synchronized (mFetching) {
+            List<ImageRequest> waiting = mFetching.get(url);
+            if (null != waiting) {
+                for (ImageRequest request : waiting) {
+                    if (!request.mCancelled) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 下载结束，继续解码所有等待该地址的请求，已取消的请求直接结束
+     */
+    private void onFetched(String url, boolean success) {
+        List<ImageRequest> waiting;
+        synchronized (mFetching) {
+            waiting = mFetching.remove(url);
+        }
+        if (null == waiting) {
+            return;
+        }
+        for (ImageRequest request : waiting) {
+            if (success && !request.mCancelled) {
+                submitDecode(request);
+            } else {
+                deliver(request, null);
+            }
+        }
+    }
+
+    /**
+     * 把结果投递到UI线程，设置到仍在等待该请求的ImageView上。已发出的请求无论成功、失败或取消都要投递一次，
+     * 以释放调度名额。调用在任意线程
+     */
+    private void deliver(final ImageRequest request, final Bitmap bitmap) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                release(request);
+                if (mRequests.get(request.mKey) == request) {
+                    mRequests.remove(request.mKey);
+                }
+                for (ImageView view : request.mTargets) {
+                    if (mTargets.get(view) == request) {
+                        mTargets.remove(view);
+                        if (null != bitmap) {
+                            display(view, bitmap);
+                        }
+                    }
+                }
+                request.mTargets.clear();
+                if (null != bitmap) {
+                    // 释放解码时为投递持有的引用
+                    releaseBitmap(bitmap);
+                }
+                dispatch();
+            }
+        });
+    }
+
+    private File getDiskFile(String url) {
+        if (url.startsWith(FILE_SCHEME)) {
+            return new File(url.substring(FILE_SCHEME.length()));
+        }
+        return new File(mDiskCacheDir, hashUrl(url));
+    }
+
+    /**
+     * 缓存文件名取地址的MD5，不同地址不会映射到同一文件
+     */
+    private static String hashUrl(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 按目标尺寸计算缩小倍数，取不小于目标尺寸的最大的2的幂
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private Bitmap decode(File file, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        Bitmap reusable = null;
+        if (null != mBitmapPool && BitmapPool.isSupported()) {
+            options.inMutable = true;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                reusable = mBitmapPool.get(ceilDiv(options.outWidth, options.inSampleSize),
+                        ceilDiv(options.outHeight, options.inSampleSize), Bitmap.Config.ARGB_8888);
+            } else if (1 == options.inSampleSize) {
+                // API 19以前只能复用相同尺寸的位图，且不支持缩小解码
+                reusable = mBitmapPool.get(options.outWidth, options.outHeight, Bitmap.Config.ARGB_8888);
+            }
+            options.inBitmap = reusable;
+        }
+        try {
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // 位图不能复用（如格式不支持），改为不复用重新解码
+            if (null == reusable) {
+                throw e;
+            }
+            mBitmapPool.put(reusable);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(file.getPath(), options);
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private boolean download(String url, File file) {
+        if (!mDiskCacheDir.exists() && !mDiskCacheDir.mkdirs()) {
+            return false;
+        }
+        HttpURLConnection connection = null;
+        InputStream in = null;
+        OutputStream out = null;
+        File temp = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            if (HttpURLConnection.HTTP_OK != connection.getResponseCode()) {
+                return false;
+            }
+            temp = File.createTempFile(file.getName(), null, mDiskCacheDir);
+            in = new BufferedInputStream(connection.getInputStream(), BUFFER_SIZE);
+            out = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            out = null;
+            final long length = temp.length();
+            if (!temp.renameTo(file)) {
+                return false;
+            }
+            onDiskFileAdded(length);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Download " + url + " failed: " + e);
+            return false;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            if (null != temp && temp.exists()) {
+                temp.delete();
+            }
+            if (null != connection) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 累计新写入的文件大小，只在超出容量时才遍历目录清理。首次调用时统计一次已有文件
+     */
+    private synchronized void onDiskFileAdded(long length) {
+        if (mDiskCacheBytes < 0) {
+            mDiskCacheBytes = 0;
+            File[] files = mDiskCacheDir.listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    mDiskCacheBytes += file.length();
+                }
+            }
+        } else {
+            mDiskCacheBytes += length;
+        }
+        if (mDiskCacheBytes > mDiskCacheSize) {
+            trimDiskCache();
+        }
+    }
+
+    /**
+     * 删除最久未使用的文件，直到占用不超过容量的3/4，留出余量使清理不会每次下载都发生。调用时持有this
+     */
+    private void trimDiskCache() {
+        File[] files = mDiskCacheDir.listFiles();
+        if (null == files) {
+            mDiskCacheBytes = 0;
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        final long target = mDiskCacheSize / 4 * 3;
+        if (total <= target) {
+            mDiskCacheBytes = total;
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > target; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+        mDiskCacheBytes = total;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+    private static class ImageRequest {
+        final String mKey;
+        final String mUrl;
+        final int mWidth;
+        final int mHeight;
+        /**
+         * 等待该请求的ImageView。只在UI线程访问
+         */
+        final List<ImageView> mTargets = new ArrayList<ImageView>(1);
+        volatile boolean mCancelled;
+        volatile Future<?> mTask;
+        /**
+         * 以下字段只在UI线程访问
+         */
+        int mPriority;
+        boolean mDispatched;
+        boolean mReleased;
+        /**
+         * 发起预取的对象，列表项用上该请求后为空
+         */
+        Object mOwner;
+        boolean mPrefetchRunning;
+        /**
+         * 只下载到磁盘缓存，不解码
+         */
+        volatile boolean mDiskOnly;
+
+        ImageRequest(String key, String url, int width, int height, int priority) {
+            mKey = key;
+            mUrl = url;
+            mWidth = width;
+            mHeight = height;
+            mPriority = priority;
+        }
+    }
+
+    private static class ViewKey {
+        String mUrl;
+        int mWidth;
+        int mHeight;
+        String mKey;
+    }
+
+    private static class BitmapRef {
+        /**
+         * 显示该位图的ImageView数，加上正在投递的次数
+         */
+        int mDisplayCount;
+        boolean mCached;
+    }
+
+    /**
+     * 一个ImageView及其显示的位图。ImageView被回收后进入引用队列，位图仍可取得以释放引用
+     */
+    private static class DisplayRef extends WeakReference<ImageView> {
+        Bitmap mBitmap;
+
+        DisplayRef(ImageView view, ReferenceQueue<? super ImageView> queue) {
+            super(view, queue);
+        }
+    }
+
+    private class DecodeTask implements Runnable {
+        private final ImageRequest mRequest;
+
+        DecodeTask(ImageRequest request) {
+            mRequest = request;
+        }
+
+        @Override
+        public void run() {
+            if (mRequest.mCancelled) {
+                deliver(mRequest, null);
+                return;
+            }
+            File file = getDiskFile(mRequest.mUrl);
+            if (!file.exists()) {
+                if (mRequest.mUrl.startsWith(FILE_SCHEME)) {
+                    deliver(mRequest, null);
+                } else {
+                    submitFetch(mRequest);
+                }
+                return;
+            }
+            if (!mRequest.mUrl.startsWith(FILE_SCHEME)) {
+                // 只更新缓存目录中的文件，用于按最近使用清理；file://指向的是应用或用户的文件
+                file.setLastModified(System.currentTimeMillis());
+            }
+            if (mRequest.mDiskOnly) {
+                deliver(mRequest, null);
+                return;
+            }
+            Bitmap bitmap = decode(file, mRequest.mWidth, mRequest.mHeight);
+            if (null != bitmap) {
+                // 投递到UI线程之前持有一个引用，避免位图刚放入就被内存缓存淘汰进位图池
+                acquireBitmap(bitmap);
+                onCached(bitmap);
+                mMemoryCache.put(mRequest.mKey, bitmap);
+            }
+            deliver(mRequest, bitmap);
+        }
+    }
+
+    private class FetchTask implements Runnable {
+        private final String mUrl;
+
+        FetchTask(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public void run() {
+            onFetched(mUrl, hasActiveWaiter(mUrl) && download(mUrl, getDiskFile(mUrl)));
+        }
+    }
+}
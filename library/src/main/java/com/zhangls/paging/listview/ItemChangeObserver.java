@@ -0,0 +1,37 @@
+package com.zhangls.paging.listview;
+
+/**
+ * 列表内容变化的监听者。与RecyclerView.AdapterDataObserver对应，位置均为适配器中的位置（包含“更多”项和底部填充视图）。
+ * 通过{@link AsyncLoadingAdapter#registerItemChangeObserver(ItemChangeObserver)}注册。
+ *
+ * @version 1
+ */
+public abstract class ItemChangeObserver {
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 整个列表发生变化，无法给出具体范围
+     */
+    public void onChanged() {
+    }
+
+    /**
+     * 指定范围内的项内容发生变化
+     */
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+    }
+
+    /**
+     * 在指定位置插入了若干项
+     */
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+    }
+
+    /**
+     * 从指定位置开始移除了若干项
+     */
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+    }
+}
@@ -0,0 +1,26 @@
+package com.zhangls.paging.listview;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 列表项的二进制序列化方式，供{@link PageDiskCache}读写缓存页使用。读写的字段和顺序必须一致。
+ *
+ * @version 1
+ */
+public interface ItemSerializer<Data> {
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 把列表项写入输出流
+     */
+    public void write(Data item, DataOutput out) throws IOException;
+
+    /**
+     * 从输入流读出一个列表项
+     */
+    public Data read(DataInput in) throws IOException;
+}
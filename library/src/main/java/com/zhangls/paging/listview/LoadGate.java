@@ -0,0 +1,183 @@
+package com.zhangls.paging.listview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 加载闸门。闸门关闭（任一已注册的条件不满足）时，加载任务被暂存而不是占用加载线程轮询等待；
+ * 闸门打开（条件变化后调用{@link #signal()}）时立即放行，等待超时后也会放行。
+ * <p>可以在任意线程调用。放行的任务总是在UI线程执行，因此任务本身应只做提交等轻量工作。
+ *
+ * @version 1
+ */
+public class LoadGate {
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final List<Condition> mConditions = new CopyOnWriteArrayList<Condition>();
+    /**
+     * 等待放行的任务，受this保护
+     */
+    private final List<Waiter> mWaiters = new ArrayList<Waiter>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 闸门是否打开：所有已注册的条件都满足
+     */
+    public boolean isOpen() {
+        for (Condition condition : mConditions) {
+            if (!condition.isSatisfied()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 闸门打开，且任务自身的条件也满足
+     *
+     * @param extra 任务自身的条件，可以为null
+     */
+    public boolean isOpen(Condition extra) {
+        return isOpen() && (null == extra || extra.isSatisfied());
+    }
+
+    /**
+     * 获取正在等待放行的任务数
+     */
+    public synchronized int getWaitingCount() {
+        return mWaiters.size();
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 注册一个放行条件，如已登录、网络已连接。条件变化时需调用{@link #signal()}。
+     */
+    public void addCondition(Condition condition) {
+        if (!mConditions.contains(condition)) {
+            mConditions.add(condition);
+        }
+    }
+
+    public void removeCondition(Condition condition) {
+        mConditions.remove(condition);
+        signal();
+    }
+
+    /**
+     * 条件可能发生了变化，重新检查并放行满足条件的任务
+     */
+    public void signal() {
+        if (!isOpen()) {
+            return;
+        }
+        List<Waiter> candidates;
+        synchronized (this) {
+            if (mWaiters.isEmpty()) {
+                return;
+            }
+            candidates = new ArrayList<Waiter>(mWaiters);
+        }
+        // 在锁外检查任务自身的条件，避免条件实现中再调用闸门造成死锁
+        List<Waiter> released = new ArrayList<Waiter>(candidates.size());
+        for (Waiter waiter : candidates) {
+            if (null == waiter.mCondition || waiter.mCondition.isSatisfied()) {
+                released.add(waiter);
+            }
+        }
+        for (Waiter waiter : released) {
+            waiter.release();
+        }
+    }
+
+    /**
+     * 暂存一个任务，闸门打开且任务自身的条件满足时执行；超时后无论条件如何都会执行
+     *
+     * @param task          放行时执行的任务
+     * @param condition     任务自身的条件，可以为null
+     * @param timeoutMillis 最长等待时间（毫秒），小于等于0表示不超时
+     */
+    public void defer(Runnable task, Condition condition, long timeoutMillis) {
+        Waiter waiter = new Waiter(task, condition);
+        synchronized (this) {
+            mWaiters.add(waiter);
+        }
+        if (timeoutMillis > 0) {
+            mHandler.postDelayed(waiter, timeoutMillis);
+        }
+        // 暂存期间闸门可能已经打开
+        signal();
+    }
+
+    /**
+     * 丢弃所有等待中的任务
+     */
+    public void cancelAll() {
+        synchronized (this) {
+            for (Waiter waiter : mWaiters) {
+                mHandler.removeCallbacks(waiter);
+            }
+            mWaiters.clear();
+        }
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+
+    /**
+     * 放行条件
+     */
+    public interface Condition {
+        /**
+         * @return 条件是否满足
+         */
+        public boolean isSatisfied();
+    }
+
+    private class Waiter implements Runnable {
+        private final Runnable mTask;
+        private final Condition mCondition;
+
+        Waiter(Runnable task, Condition condition) {
+            mTask = task;
+            mCondition = condition;
+        }
+
+        /**
+         * 等待超时
+         */
+        @Override
+        public void run() {
+            release();
+        }
+
+        /**
+         * 从等待队列中移除并在UI线程执行，已被放行或丢弃时什么都不做
+         */
+        void release() {
+            synchronized (LoadGate.this) {
+                if (!mWaiters.remove(this)) {
+                    return;
+                }
+            }
+            mHandler.removeCallbacks(this);
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mTask.run();
+            } else {
+                mHandler.post(mTask);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.zhangls.paging.listview;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分页加载的状态机。状态、正在加载的页数、开关和代数打包在一个原子长整数中，所有转换都通过compareAndSet完成，
+ * 读取当前状态只需一次原子读，不需要加锁。
+ * <p>状态：空闲、加载中、被阻塞、失败（等待用户重试）。没有更多是独立的标志位，不会覆盖阻塞或失败状态。
+ * 加载中的页数与状态一起更新，每发起一页加一，完成、失败或被丢弃时减一。代数在取消加载时递增，旧代数的完成通知会被忽略。
+ * 可以在任意线程调用。
+ *
+ * @version 1
+ */
+class LoadStateMachine {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    static final int STATE_IDLE = 0;
+    static final int STATE_LOADING = 1;
+    static final int STATE_BLOCKED = 2;
+    static final int STATE_FAILED = 3;
+
+    private static final long STATE_MASK = 0x7L;
+    /**
+     * 关闭加载更多（{@link AsyncLoadingAdapter#setMoreEnabled(boolean)}）
+     */
+    private static final long FLAG_DISABLED = 1L << 3;
+    /**
+     * 被阻塞或失败期间有过加载请求，恢复时需要补发
+     */
+    private static final long FLAG_PENDING = 1L << 4;
+    /**
+     * 没有更多项（{@link AsyncLoadingAdapter#setHasMore(boolean)}）
+     */
+    private static final long FLAG_EXHAUSTED = 1L << 5;
+    private static final int IN_FLIGHT_SHIFT = 8;
+    private static final long IN_FLIGHT_MASK = 0xffffL << IN_FLIGHT_SHIFT;
+    private static final int EPOCH_SHIFT = 32;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final AtomicLong mWord = new AtomicLong();
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 一次原子读取完整的状态，再用静态方法解析
+     */
+    long get() {
+        return mWord.get();
+    }
+
+    static int stateOf(long word) {
+        return (int) (word & STATE_MASK);
+    }
+
+    static int inFlightOf(long word) {
+        return (int) ((word & IN_FLIGHT_MASK) >>> IN_FLIGHT_SHIFT);
+    }
+
+    static int epochOf(long word) {
+        return (int) (word >>> EPOCH_SHIFT);
+    }
+
+    static boolean isEnabled(long word) {
+        return 0 == (word & FLAG_DISABLED);
+    }
+
+    /**
+     * 该状态下是否可能发起新的一页
+     */
+    static boolean canLoad(long word) {
+        final int state = stateOf(word);
+        return (STATE_IDLE == state || STATE_LOADING == state) && isEnabled(word) && !isExhausted(word);
+    }
+
+    static boolean isExhausted(long word) {
+        return 0 != (word & FLAG_EXHAUSTED);
+    }
+
+    int getState() {
+        return stateOf(mWord.get());
+    }
+
+    int getEpoch() {
+        return epochOf(mWord.get());
+    }
+
+    int getInFlight() {
+        return inFlightOf(mWord.get());
+    }
+
+    boolean isExhausted() {
+        return isExhausted(mWord.get());
+    }
+
+    boolean isEnabled() {
+        return isEnabled(mWord.get());
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 尝试发起一页。被阻塞或失败时记录下这次请求，恢复时由{@link #unblock()}返回。
+     *
+     * @param maxInFlight 最多同时加载的页数
+     * @return 成功时返回该页的代数，之后必须调用{@link #complete(int)}、{@link #fail(int)}或{@link #abort(int)}之一；
+     * 不能发起时返回-1
+     */
+    int tryBegin(int maxInFlight) {
+        while (true) {
+            final long word = mWord.get();
+            final int state = stateOf(word);
+            if (STATE_BLOCKED == state || STATE_FAILED == state) {
+                if (0 != (word & FLAG_PENDING) || mWord.compareAndSet(word, word | FLAG_PENDING)) {
+                    return -1;
+                }
+                continue;
+            }
+            final int inFlight = inFlightOf(word);
+            if (!canLoad(word) || inFlight >= maxInFlight) {
+                return -1;
+            }
+            if (mWord.compareAndSet(word, with(word, STATE_LOADING, inFlight + 1))) {
+                return epochOf(word);
+            }
+        }
+    }
+
+    /**
+     * 一页加载成功
+     *
+     * @param epoch {@link #tryBegin(int)}返回的代数
+     * @return 是否是当前代数的页
+     */
+    boolean complete(int epoch) {
+        return finish(epoch, -1);
+    }
+
+    /**
+     * 一页加载失败，进入失败状态，直到{@link #unblock()}
+     */
+    boolean fail(int epoch) {
+        return finish(epoch, STATE_FAILED);
+    }
+
+    /**
+     * 一页被丢弃或没能提交，不改变状态
+     */
+    boolean abort(int epoch) {
+        return finish(epoch, -1);
+    }
+
+    private boolean finish(int epoch, int newState) {
+        while (true) {
+            final long word = mWord.get();
+            final int inFlight = inFlightOf(word);
+            if (epochOf(word) != epoch || 0 == inFlight) {
+                return false;
+            }
+            int state = stateOf(word);
+            if (STATE_FAILED == newState) {
+                state = STATE_FAILED;
+            } else if (STATE_LOADING == state && 1 == inFlight) {
+                state = STATE_IDLE;
+            }
+            if (mWord.compareAndSet(word, with(word, state, inFlight - 1))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 阻塞加载，已经在加载的页不受影响
+     */
+    void block() {
+        while (true) {
+            final long word = mWord.get();
+            final int state = stateOf(word);
+            if (STATE_IDLE != state && STATE_LOADING != state) {
+                return;
+            }
+            if (mWord.compareAndSet(word, with(word, STATE_BLOCKED, inFlightOf(word)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 从被阻塞或失败状态恢复
+     *
+     * @return 阻塞期间是否有过加载请求
+     */
+    boolean unblock() {
+        while (true) {
+            final long word = mWord.get();
+            final int state = stateOf(word);
+            if (STATE_BLOCKED != state && STATE_FAILED != state) {
+                return false;
+            }
+            final int inFlight = inFlightOf(word);
+            final long next = with(word, 0 == inFlight ? STATE_IDLE : STATE_LOADING, inFlight) & ~FLAG_PENDING;
+            if (mWord.compareAndSet(word, next)) {
+                return 0 != (word & FLAG_PENDING);
+            }
+        }
+    }
+
+    /**
+     * 设置是否还有更多，阻塞、失败状态保持不变
+     */
+    void setExhausted(boolean exhausted) {
+        while (true) {
+            final long word = mWord.get();
+            final long next = exhausted ? word | FLAG_EXHAUSTED : word & ~FLAG_EXHAUSTED;
+            if (word == next || mWord.compareAndSet(word, next)) {
+                return;
+            }
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        while (true) {
+            final long word = mWord.get();
+            final long next = enabled ? word & ~FLAG_DISABLED : word | FLAG_DISABLED;
+            if (word == next || mWord.compareAndSet(word, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取消所有正在加载的页：代数加一，加载中的页数清零，旧代数的完成通知此后都会被忽略。
+     * 失败状态随被取消的页一起清除；阻塞、没有更多等状态保持不变。
+     *
+     * @return 新的代数
+     */
+    int reset() {
+        while (true) {
+            final long word = mWord.get();
+            final int state = stateOf(word);
+            // 代数保持非负，与tryBegin的-1区分
+            final long epoch = (epochOf(word) + 1) & Integer.MAX_VALUE;
+            final long next;
+            if (STATE_BLOCKED == state) {
+                next = with((epoch << EPOCH_SHIFT) | (word & (FLAG_DISABLED | FLAG_PENDING | FLAG_EXHAUSTED)),
+                        STATE_BLOCKED, 0);
+            } else {
+                // 失败期间记录的请求随失败一起丢弃
+                next = with((epoch << EPOCH_SHIFT) | (word & (FLAG_DISABLED | FLAG_EXHAUSTED)), STATE_IDLE, 0);
+            }
+            if (mWord.compareAndSet(word, next)) {
+                return epochOf(next);
+            }
+        }
+    }
+
+    private static long with(long word, int state, int inFlight) {
+        return (word & ~(STATE_MASK | IN_FLIGHT_MASK)) | state | ((long) inFlight << IN_FLIGHT_SHIFT);
+    }
+}
@@ -0,0 +1,139 @@
+package com.zhangls.paging.listview;
+
+import android.os.Build;
+import android.os.Process;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分页加载线程池。
+ * <p>所有{@link AsyncLoadingAdapter}默认共享同一个实例，线程数和等待队列都是有界的，工作线程以后台优先级运行，
+ * 避免快速滑动时每页新建一个线程与UI线程争抢CPU。
+ *
+ * @version 1
+ */
+public class LoaderExecutor implements Executor {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认工作线程数
+     */
+    public static final int DEFAULT_POOL_SIZE = 2;
+    /**
+     * 默认等待队列容量
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+    /**
+     * 空闲线程存活时间（秒）
+     */
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private static LoaderExecutor sDefault;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    public LoaderExecutor() {
+        this(DEFAULT_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public LoaderExecutor(int poolSize, int queueCapacity) {
+        this(poolSize, queueCapacity, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @param poolSize      工作线程数
+     * @param queueCapacity 等待队列容量
+     * @param policy        队列已满时的拒绝策略。使用默认的AbortPolicy时，被拒绝的加载会在下一次触发时重试
+     */
+    public LoaderExecutor(int poolSize, int queueCapacity, RejectedExecutionHandler policy) {
+        mExecutor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new LoaderThreadFactory(), policy);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            // API 9以前核心线程不会超时，空闲时保持poolSize个线程
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取全局共享的加载线程池
+     */
+    public static synchronized LoaderExecutor getDefault() {
+        if (null == sDefault) {
+            sDefault = new LoaderExecutor();
+        }
+        return sDefault;
+    }
+
+    public int getPoolSize() {
+        return mExecutor.getCorePoolSize();
+    }
+
+    public int getQueuedCount() {
+        return mExecutor.getQueue().size();
+    }
+
+    // ==========================================================================
+    // Setters
+    // ==========================================================================
+
+    /**
+     * 替换全局共享的加载线程池。只影响之后发起的加载。
+     */
+    public static synchronized void setDefault(LoaderExecutor executor) {
+        sDefault = executor;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+    @Override
+    public void execute(Runnable command) {
+        mExecutor.execute(command);
+    }
+
+    public Future<?> submit(Runnable task) {
+        return mExecutor.submit(task);
+    }
+
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "PagingLoader #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
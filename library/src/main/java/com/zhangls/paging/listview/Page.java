@@ -0,0 +1,204 @@
+package com.zhangls.paging.listview;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * 一次分页加载的请求参数与结果。在UI线程创建，在加载线程填充结果，再投递回UI线程处理。
+ *
+ * @version 1
+ */
+public class Page<Data> {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 在列表尾部追加的新一页
+     */
+    public static final int KIND_MORE = 0;
+    /**
+     * 重新加载已被回收的一页
+     */
+    public static final int KIND_PREVIOUS = 1;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final int mKind;
+    private final int mGeneration;
+    private final int mStartPosition;
+    private final int mRequestSize;
+
+    private List<Data> mItems;
+    private List<Data> mPreparedItems;
+    /**
+     * 与mPreparedItems一一对应的预先计算的渲染模型
+     */
+    private List<Object> mRenderModels;
+    private Exception mError;
+    /**
+     * 由发起者定义的附加信息，如被回收页的序号
+     */
+    private int mTag;
+    /**
+     * 游标分页时请求该页使用的游标
+     */
+    private Object mCursor;
+    /**
+     * 游标分页时数据源返回的下一页游标，为空表示没有更多
+     */
+    private Object mNextCursor;
+    /**
+     * 数据是否来自缓存（可能已过时）
+     */
+    private boolean mFromCache;
+    /**
+     * 数据源明确告知已经没有更多
+     */
+    private boolean mEndOfData;
+
+    /**
+     * 执行该页加载的任务
+     */
+    Future<?> mTask;
+    /**
+     * 提交加载的时间，用于统计每页耗时
+     */
+    long mSubmitTime;
+    /**
+     * 结果是否已回到UI线程（等待按顺序发布）
+     */
+    boolean mArrived;
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    public Page(int generation, int startPosition, int requestSize) {
+        this(KIND_MORE, generation, startPosition, requestSize);
+    }
+
+    public Page(int kind, int generation, int startPosition, int requestSize) {
+        mKind = kind;
+        mGeneration = generation;
+        mStartPosition = startPosition;
+        mRequestSize = requestSize;
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+    public int getKind() {
+        return mKind;
+    }
+
+    public int getGeneration() {
+        return mGeneration;
+    }
+
+    public int getStartPosition() {
+        return mStartPosition;
+    }
+
+    public int getRequestSize() {
+        return mRequestSize;
+    }
+
+    /**
+     * 获取数据源返回的原始数据
+     */
+    public List<Data> getItems() {
+        return mItems;
+    }
+
+    /**
+     * 获取在加载线程过滤、去重后待添加到列表的数据
+     */
+    public List<Data> getPreparedItems() {
+        return mPreparedItems;
+    }
+
+    /**
+     * 获取在加载线程为预处理后的数据计算的渲染模型，与{@link #getPreparedItems()}一一对应，没有时为null
+     */
+    public List<Object> getRenderModels() {
+        return mRenderModels;
+    }
+
+    public boolean isPrepared() {
+        return null != mPreparedItems;
+    }
+
+    public Exception getError() {
+        return mError;
+    }
+
+    public boolean isSuccessful() {
+        return null == mError;
+    }
+
+    public int getTag() {
+        return mTag;
+    }
+
+    public Object getCursor() {
+        return mCursor;
+    }
+
+    public Object getNextCursor() {
+        return mNextCursor;
+    }
+
+    public boolean isFromCache() {
+        return mFromCache;
+    }
+
+    public boolean isEndOfData() {
+        return mEndOfData;
+    }
+
+    // ==========================================================================
+    // Setters
+    // ==========================================================================
+    public void setItems(List<Data> items) {
+        mItems = items;
+    }
+
+    public void setPreparedItems(List<Data> preparedItems) {
+        mPreparedItems = preparedItems;
+    }
+
+    public void setRenderModels(List<Object> renderModels) {
+        mRenderModels = renderModels;
+    }
+
+    public void setError(Exception error) {
+        mError = error;
+    }
+
+    public void setTag(int tag) {
+        mTag = tag;
+    }
+
+    public void setCursor(Object cursor) {
+        mCursor = cursor;
+    }
+
+    /**
+     * 游标分页的数据源在加载线程内设置下一页的游标，不设置（为空）表示已经没有更多
+     */
+    public void setNextCursor(Object nextCursor) {
+        mNextCursor = nextCursor;
+    }
+
+    public void setFromCache(boolean fromCache) {
+        mFromCache = fromCache;
+    }
+
+    /**
+     * 偏移分页的数据源在加载线程内告知这是最后一页。自适应分页时返回的项数少于请求的项数不代表没有更多，
+     * 需要通过该方法或返回空页结束加载。
+     */
+    public void setEndOfData(boolean endOfData) {
+        mEndOfData = endOfData;
+    }
+}
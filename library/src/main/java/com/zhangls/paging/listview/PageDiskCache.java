@@ -0,0 +1,288 @@
+package com.zhangls.paging.listview;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分页数据的磁盘缓存。每页存为一个紧凑的二进制记录文件，列表项通过{@link ItemSerializer}读写，
+ * 读取时使用内存映射，冷启动时可以在几毫秒内拿到首屏数据。
+ * <p>记录格式：魔数、版本、查询标识、写入时间、下一页游标（可选）、项数、各项数据。写入先写临时文件再重命名，不会读到写了一半的记录。
+ * 所有方法都会做磁盘IO，应在加载线程调用。
+ *
+ * @version 1
+ */
+public class PageDiskCache<Data> {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认缓存有效期：一天
+     */
+    public static final long DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+    private static final int MAGIC = 0x50474443;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".page";
+    private static final String TAG = PageDiskCache.class.getSimpleName();
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final File mDirectory;
+    private final ItemSerializer<Data> mSerializer;
+    private volatile long mMaxAge = DEFAULT_MAX_AGE;
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+
+    /**
+     * @param directory  缓存目录，不同类型的数据应使用不同目录
+     * @param serializer 列表项的序列化方式
+     */
+    public PageDiskCache(File directory, ItemSerializer<Data> serializer) {
+        mDirectory = directory;
+        mSerializer = serializer;
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    public long getMaxAge() {
+        return mMaxAge;
+    }
+
+    // ==========================================================================
+    // Setters
+    // ==========================================================================
+
+    /**
+     * 设置缓存有效期，超过有效期的记录视为不存在
+     *
+     * @param maxAge 有效期（毫秒）
+     */
+    public void setMaxAge(long maxAge) {
+        mMaxAge = maxAge;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 读取缓存页
+     *
+     * @param queryKey  查询的标识
+     * @param pageIndex 页序号
+     * @return 缓存页，不存在、已过期、损坏或无法反序列化时返回null
+     */
+    public Entry<Data> get(String queryKey, int pageIndex) {
+        File file = getFile(queryKey, pageIndex);
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                file.delete();
+                return null;
+            }
+            if (!queryKey.equals(in.readUTF())) {
+                // 文件名哈希冲突
+                return null;
+            }
+            long timestamp = in.readLong();
+            if (System.currentTimeMillis() - timestamp > mMaxAge) {
+                return null;
+            }
+            String nextCursor = in.readBoolean() ? in.readUTF() : null;
+            int count = in.readInt();
+            List<Data> items = new ArrayList<Data>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(mSerializer.read(in));
+            }
+            return new Entry<Data>(items, nextCursor, timestamp);
+        } catch (IOException e) {
+            Log.w(TAG, "Read " + file + " failed: " + e);
+            file.delete();
+            return null;
+        } catch (RuntimeException e) {
+            // 序列化方式变化或记录损坏（如ClassCastException），丢弃该记录，改为请求数据源
+            Log.w(TAG, "Read " + file + " failed: " + e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 写入缓存页
+     *
+     * @param queryKey   查询的标识
+     * @param pageIndex  页序号
+     * @param items      该页数据
+     * @param nextCursor 游标分页时下一页的游标，只支持字符串游标，其他类型的游标不会被缓存
+     * @return 是否写入成功
+     */
+    public boolean put(String queryKey, int pageIndex, List<Data> items, Object nextCursor) {
+        if (null != nextCursor && !(nextCursor instanceof String)) {
+            return false;
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return false;
+        }
+        File file = getFile(queryKey, pageIndex);
+        File temp = null;
+        DataOutputStream out = null;
+        try {
+            temp = File.createTempFile(file.getName(), null, mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(queryKey);
+            out.writeLong(System.currentTimeMillis());
+            out.writeBoolean(null != nextCursor);
+            if (null != nextCursor) {
+                out.writeUTF((String) nextCursor);
+            }
+            out.writeInt(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                mSerializer.write(items.get(i), out);
+            }
+            out.close();
+            out = null;
+            return temp.renameTo(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Write " + file + " failed: " + e);
+            return false;
+        } finally {
+            closeQuietly(out);
+            if (null != temp && temp.exists()) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * 删除某个查询的全部缓存页
+     */
+    public void remove(String queryKey) {
+        final String prefix = hashKey(queryKey) + "_";
+        File[] files = mDirectory.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().startsWith(prefix)) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存目录
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (null == files) {
+            return;
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private File getFile(String queryKey, int pageIndex) {
+        return new File(mDirectory, hashKey(queryKey) + "_" + pageIndex + SUFFIX);
+    }
+
+    private static String hashKey(String queryKey) {
+        return Integer.toHexString(queryKey.hashCode()) + "-" + Integer.toHexString(queryKey.length());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+
+    /**
+     * 一条缓存页记录
+     */
+    public static class Entry<Data> {
+        private final List<Data> mItems;
+        private final String mNextCursor;
+        private final long mTimestamp;
+
+        Entry(List<Data> items, String nextCursor, long timestamp) {
+            mItems = items;
+            mNextCursor = nextCursor;
+            mTimestamp = timestamp;
+        }
+
+        public List<Data> getItems() {
+            return mItems;
+        }
+
+        public String getNextCursor() {
+            return mNextCursor;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, len);
+            return len;
+        }
+    }
+}
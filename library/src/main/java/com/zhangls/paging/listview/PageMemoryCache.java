@@ -0,0 +1,241 @@
+package com.zhangls.paging.listview;
+
+import android.os.SystemClock;
+import android.support.v4.util.LruCache;
+
+import java.util.List;
+
+/**
+ * 进程内共享的分页数据内存缓存。按“查询标识 + 页位置（或游标）”缓存每页数据，返回列表或切换Tab时新建的适配器
+ * 可以直接从缓存恢复，不再请求数据源。
+ * <p>容量按权重计算（默认为每页的项数，可重写{@link #weigh(List)}），超出时淘汰最久未使用的页；超过有效期的页视为未命中。
+ * 缓存的列表会被多个适配器共享，放入后不能再修改。所有方法都是线程安全的。
+ *
+ * @version 1
+ */
+public class PageMemoryCache {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认容量：2000项
+     */
+    public static final int DEFAULT_MAX_WEIGHT = 2000;
+    /**
+     * 默认有效期：5分钟
+     */
+    public static final long DEFAULT_TTL = 5 * 60 * 1000L;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private static PageMemoryCache sDefault;
+
+    private final LruCache<String, Entry> mCache;
+    private volatile long mTtl = DEFAULT_TTL;
+    private int mHitCount;
+    private int mMissCount;
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    public PageMemoryCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param maxWeight 缓存的总权重上限
+     */
+    public PageMemoryCache(int maxWeight) {
+        mCache = new LruCache<String, Entry>(maxWeight) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.mWeight;
+            }
+        };
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取进程内共享的缓存
+     */
+    public static synchronized PageMemoryCache getDefault() {
+        if (null == sDefault) {
+            sDefault = new PageMemoryCache();
+        }
+        return sDefault;
+    }
+
+    public long getTtl() {
+        return mTtl;
+    }
+
+    /**
+     * 获取当前缓存的总权重
+     */
+    public int getWeight() {
+        return mCache.size();
+    }
+
+    public int getMaxWeight() {
+        return mCache.maxSize();
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 获取未命中次数，包括已过期的页
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    // ==========================================================================
+    // Setters
+    // ==========================================================================
+
+    /**
+     * 替换进程内共享的缓存，传入null时恢复默认缓存
+     */
+    public static synchronized void setDefault(PageMemoryCache cache) {
+        sDefault = cache;
+    }
+
+    /**
+     * 设置有效期
+     *
+     * @param ttl 有效期（毫秒）
+     */
+    public void setTtl(long ttl) {
+        mTtl = ttl;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 生成偏移分页的缓存键。键中不含项数，每页项数变化（如自适应分页）时读取方按需截取
+     */
+    public static String offsetKey(String queryKey, int startPosition) {
+        return queryKey + '#' + startPosition;
+    }
+
+    /**
+     * 生成游标分页的缓存键，游标需要实现能区分不同页的toString()
+     *
+     * @param cursor 为空表示第一页
+     */
+    public static String cursorKey(String queryKey, Object cursor) {
+        return null == cursor ? queryKey + '@' : queryKey + '@' + cursor;
+    }
+
+    /**
+     * 读取缓存页
+     *
+     * @return 缓存页，不存在或已过期时返回null
+     */
+    public Entry get(String key) {
+        Entry entry = mCache.get(key);
+        if (null != entry && SystemClock.elapsedRealtime() - entry.mTime > mTtl) {
+            mCache.remove(key);
+            entry = null;
+        }
+        synchronized (this) {
+            if (null == entry) {
+                mMissCount++;
+            } else {
+                mHitCount++;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 写入缓存页
+     *
+     * @param items      该页数据，放入后不能再修改
+     * @param nextCursor 游标分页时下一页的游标
+     */
+    public void put(String key, List<?> items, Object nextCursor) {
+        put(key, items, nextCursor, false);
+    }
+
+    /**
+     * 写入缓存页
+     *
+     * @param items      该页数据，放入后不能再修改
+     * @param nextCursor 游标分页时下一页的游标
+     * @param endOfData  数据源已告知该页之后没有更多
+     */
+    public void put(String key, List<?> items, Object nextCursor, boolean endOfData) {
+        mCache.put(key, new Entry(items, nextCursor, endOfData, Math.max(1, weigh(items)),
+                SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * 删除某个查询的全部缓存页，如数据有修改、下拉刷新时
+     */
+    public void remove(String queryKey) {
+        // LruCache不支持按前缀删除，遍历快照找出该查询的所有页
+        for (String key : mCache.snapshot().keySet()) {
+            if (key.startsWith(queryKey) && key.length() > queryKey.length()) {
+                char c = key.charAt(queryKey.length());
+                if ('#' == c || '@' == c) {
+                    mCache.remove(key);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * 计算一页数据的权重，默认为项数
+     */
+    protected int weigh(List<?> items) {
+        return null == items ? 0 : items.size();
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+
+    /**
+     * 一条缓存页记录
+     */
+    public static class Entry {
+        private final List<?> mItems;
+        private final Object mNextCursor;
+        private final boolean mEndOfData;
+        private final int mWeight;
+        private final long mTime;
+
+        Entry(List<?> items, Object nextCursor, boolean endOfData, int weight, long time) {
+            mItems = items;
+            mNextCursor = nextCursor;
+            mEndOfData = endOfData;
+            mWeight = weight;
+            mTime = time;
+        }
+
+        public List<?> getItems() {
+            return mItems;
+        }
+
+        public Object getNextCursor() {
+            return mNextCursor;
+        }
+
+        public boolean isEndOfData() {
+            return mEndOfData;
+        }
+    }
+}
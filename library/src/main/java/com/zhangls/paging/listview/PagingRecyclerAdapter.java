@@ -0,0 +1,234 @@
+package com.zhangls.paging.listview;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.widget.AbsListView.OnScrollListener;
+import android.widget.AbsListView.RecyclerListener;
+import android.widget.FrameLayout;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 把{@link AsyncLoadingAdapter}及其子类适配为RecyclerView.Adapter。
+ * <p>分页加载（onLoadMore、getIncrement、getPreloadCount、hasMore）、“更多”项、底部填充视图和滚动时的图片加载策略
+ * 都沿用原适配器的实现，子类无需改写。内容变化通过{@link ItemChangeObserver}映射为notifyItemRange*，
+ * 同一适配器类型在多个列表（如多个Tab）之间共享一个RecycledViewPool。
+ *
+ * @version 1
+ */
+public class PagingRecyclerAdapter extends RecyclerView.Adapter<PagingRecyclerAdapter.ViewHolder> {
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    /**
+     * 每个适配器类型在共享回收池中占用的视图类型起始值，不同类型的适配器互不复用视图
+     */
+    private static final Map<Class<?>, Integer> sViewTypeOffsets = new HashMap<Class<?>, Integer>();
+    private static int sNextViewTypeOffset;
+    private static RecyclerView.RecycledViewPool sSharedPool;
+
+    private final AsyncLoadingAdapter<?> mAdapter;
+    private final int mViewTypeOffset;
+    private RecyclerView mRecyclerView;
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    public PagingRecyclerAdapter(AsyncLoadingAdapter<?> adapter) {
+        mAdapter = adapter;
+        mViewTypeOffset = obtainViewTypeOffset(adapter);
+        adapter.registerItemChangeObserver(new ItemChangeObserver() {
+            @Override
+            public void onChanged() {
+                notifyDataSetChanged();
+            }
+
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount) {
+                notifyItemRangeChanged(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                notifyItemRangeInserted(positionStart, itemCount);
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                notifyItemRangeRemoved(positionStart, itemCount);
+            }
+        });
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取所有列表共享的回收池
+     */
+    public static synchronized RecyclerView.RecycledViewPool getSharedRecycledViewPool() {
+        if (null == sSharedPool) {
+            sSharedPool = new RecyclerView.RecycledViewPool();
+        }
+        return sSharedPool;
+    }
+
+    public AsyncLoadingAdapter<?> getWrappedAdapter() {
+        return mAdapter;
+    }
+
+    public RecyclerView getRecyclerView() {
+        return mRecyclerView;
+    }
+
+    private static synchronized int obtainViewTypeOffset(AsyncLoadingAdapter<?> adapter) {
+        Integer offset = sViewTypeOffsets.get(adapter.getClass());
+        if (null == offset) {
+            offset = sNextViewTypeOffset;
+            sNextViewTypeOffset += adapter.getViewTypeCount();
+            sViewTypeOffsets.put(adapter.getClass(), offset);
+        }
+        return offset;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 绑定到RecyclerView，并使用共享回收池
+     */
+    public void attachTo(RecyclerView recyclerView) {
+        attachTo(recyclerView, true);
+    }
+
+    /**
+     * 绑定到RecyclerView：设置适配器、滚动监听（驱动图片加载策略和下一页预取）以及回收池
+     *
+     * @param recyclerView 列表
+     * @param sharePool    是否使用{@link #getSharedRecycledViewPool()}
+     */
+    public void attachTo(RecyclerView recyclerView, boolean sharePool) {
+        mRecyclerView = recyclerView;
+        if (sharePool) {
+            recyclerView.setRecycledViewPool(getSharedRecycledViewPool());
+        }
+        recyclerView.setOnScrollListener(mScrollListener);
+        recyclerView.setAdapter(this);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mAdapter.getCount();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mAdapter.getItemViewType(position) + mViewTypeOffset;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        FrameLayout container = new FrameLayout(parent.getContext());
+        container.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new ViewHolder(container);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        View contentView = holder.getContentView();
+        View view = mAdapter.getView(position, contentView, holder.mContainer);
+        if (view != contentView) {
+            holder.mContainer.removeAllViews();
+            if (null != view) {
+                // 同一个视图（如唯一的“更多”项）可能还在另一个holder的容器中，先从原容器移除
+                ViewParent parent = view.getParent();
+                if (parent instanceof ViewGroup) {
+                    ((ViewGroup) parent).removeView(view);
+                }
+                holder.mContainer.addView(view);
+            }
+        }
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        View contentView = holder.getContentView();
+        if (mAdapter instanceof RecyclerListener) {
+            ((RecyclerListener) mAdapter).onMovedToScrapHeap(contentView);
+        }
+        if (mAdapter instanceof ImageListAdapter) {
+            // 视图进入共享回收池后可能被其他列表使用
+            ((ImageListAdapter<?>) mAdapter).forgetBinding(contentView);
+        }
+    }
+
+    /**
+     * 把RecyclerView的滚动状态转换为AbsListView的滚动状态
+     */
+    private static int toListScrollState(int recyclerState) {
+        switch (recyclerState) {
+            case RecyclerView.SCROLL_STATE_DRAGGING:
+                return OnScrollListener.SCROLL_STATE_TOUCH_SCROLL;
+            case RecyclerView.SCROLL_STATE_SETTLING:
+                return OnScrollListener.SCROLL_STATE_FLING;
+            default:
+                return OnScrollListener.SCROLL_STATE_IDLE;
+        }
+    }
+
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(int newState) {
+            if (mAdapter instanceof OnScrollListener) {
+                ((OnScrollListener) mAdapter).onScrollStateChanged(null, toListScrollState(newState));
+            }
+        }
+
+        @Override
+        public void onScrolled(int dx, int dy) {
+            if (null == mRecyclerView || !(mRecyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+                return;
+            }
+            LinearLayoutManager layoutManager = (LinearLayoutManager) mRecyclerView.getLayoutManager();
+            final int first = layoutManager.findFirstVisibleItemPosition();
+            final int last = layoutManager.findLastVisibleItemPosition();
+            if (RecyclerView.NO_POSITION == first || RecyclerView.NO_POSITION == last) {
+                return;
+            }
+            final int visibleCount = last - first + 1;
+            if (mAdapter instanceof OnScrollListener) {
+                ((OnScrollListener) mAdapter).onScroll(null, first, visibleCount, getItemCount());
+            }
+            if (dx > 0 || dy > 0) {
+                // 沿滚动方向预取一屏：下一页在“更多”项绑定之前就开始加载
+                mAdapter.loadMoreIfNeeded(last + visibleCount);
+            }
+        }
+    };
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        private final FrameLayout mContainer;
+
+        ViewHolder(FrameLayout container) {
+            super(container);
+            mContainer = container;
+        }
+
+        /**
+         * 获取原适配器返回的列表项视图
+         */
+        public View getContentView() {
+            return mContainer.getChildCount() > 0 ? mContainer.getChildAt(0) : null;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.zhangls.paging.listview;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 合并相同的分页请求。同一数据在多个列表中展示时，各适配器并发发出的相同请求只会真正执行一次，结果分发给所有等待者。
+ * <p>偏移分页还可以合并短时间窗口内同一查询的相邻页：第一个请求等待一个窗口，期间到达的相邻或重叠的请求并入同一次
+ * 更大的请求，返回后按各自的范围切分。窗口关闭后、请求返回前到达的、范围已被包含的请求直接等待该请求的结果。
+ * <p>在加载线程调用，等待者会阻塞到结果返回。返回的列表被多个适配器共享，不能修改。
+ *
+ * @version 1
+ */
+public class RequestCoalescer {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认合并相邻页的时间窗口（毫秒）
+     */
+    public static final int DEFAULT_BATCH_WINDOW = 10;
+    /**
+     * 默认合并后单次请求的最大项数
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private static RequestCoalescer sDefault;
+
+    private final ConcurrentHashMap<String, FutureTask<?>> mInFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+    /**
+     * 每个查询还没有返回的批次（等待窗口或正在请求），受this保护
+     */
+    private final Map<String, List<Batch<?>>> mBatches = new HashMap<String, List<Batch<?>>>();
+    /**
+     * 每个查询正在进行的偏移分页请求数，受this保护
+     */
+    private final Map<String, Integer> mActiveCounts = new HashMap<String, Integer>();
+    private volatile int mBatchWindow = DEFAULT_BATCH_WINDOW;
+    private volatile int mMaxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private int mRequestCount;
+    private int mExecuteCount;
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取进程内共享的实例
+     */
+    public static synchronized RequestCoalescer getDefault() {
+        if (null == sDefault) {
+            sDefault = new RequestCoalescer();
+        }
+        return sDefault;
+    }
+
+    public int getBatchWindow() {
+        return mBatchWindow;
+    }
+
+    public int getMaxBatchSize() {
+        return mMaxBatchSize;
+    }
+
+    /**
+     * 获取收到的请求数
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * 获取合并后真正执行的请求数
+     */
+    public synchronized int getExecuteCount() {
+        return mExecuteCount;
+    }
+
+    // ==========================================================================
+    // Setters
+    // ==========================================================================
+
+    /**
+     * 设置合并相邻页的时间窗口，0表示只合并相同或范围被包含的请求、不等待
+     *
+     * @param batchWindow 时间窗口（毫秒）
+     */
+    public void setBatchWindow(int batchWindow) {
+        mBatchWindow = batchWindow;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 执行请求。相同key的请求正在执行时，等待并返回它的结果。
+     *
+     * @param key     请求的唯一标识
+     * @param request 请求
+     * @return 请求结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> request) throws Exception {
+        countRequest();
+        boolean retried = false;
+        while (true) {
+            FutureTask<T> task = new FutureTask<T>(request);
+            FutureTask<T> running = (FutureTask<T>) mInFlight.putIfAbsent(key, task);
+            if (null == running) {
+                countExecute();
+                try {
+                    task.run();
+                    return getResult(task);
+                } finally {
+                    mInFlight.remove(key, task);
+                }
+            }
+            try {
+                return getResult(running);
+            } catch (InterruptedIOException e) {
+                // 执行请求的线程被取消，自己没有被取消时重新发起一次
+                if (retried || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                retried = true;
+            }
+        }
+    }
+
+    /**
+     * 请求偏移分页的一页。相同查询的相同、重叠或相邻的请求在时间窗口内合并为一次请求；
+     * 范围已包含在正在进行的请求中时，等待该请求的结果。同一查询没有其他请求在进行时不等待窗口，直接执行。
+     * 执行合并请求的线程被取消时，并入的请求重新发起一次。
+     * <p>结果写入page：本页数据（数据源没有更多时可能少于请求的项数），以及合并的请求没有更多、
+     * 且本页到达返回数据末尾时的{@link Page#setEndOfData(boolean)}。
+     *
+     * @param queryKey 查询的唯一标识
+     * @param page     本页的起始位置和项数
+     * @param fetcher  执行（合并后的）请求
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void fetchRange(String queryKey, Page<T> page, RangeFetcher<T> fetcher) throws Exception {
+        final int startPosition = page.getStartPosition();
+        final int requestSize = page.getRequestSize();
+        countRequest();
+        addActive(queryKey, 1);
+        try {
+            boolean retried = false;
+            while (true) {
+                Batch<T> batch;
+                boolean leader = false;
+                boolean concurrent;
+                synchronized (this) {
+                    batch = (Batch<T>) findBatch(queryKey, startPosition, requestSize);
+                    if (null == batch) {
+                        batch = new Batch<T>(startPosition, startPosition + requestSize);
+                        // 不合并相邻页时范围立即固定，只有相同或被包含的请求等待结果
+                        batch.closed = mBatchWindow <= 0;
+                        List<Batch<?>> batches = mBatches.get(queryKey);
+                        if (null == batches) {
+                            batches = new ArrayList<Batch<?>>(1);
+                            mBatches.put(queryKey, batches);
+                        }
+                        batches.add(batch);
+                        leader = true;
+                    } else if (!batch.closed) {
+                        batch.start = Math.min(batch.start, startPosition);
+                        batch.end = Math.max(batch.end, startPosition + requestSize);
+                    }
+                    concurrent = mActiveCounts.get(queryKey) > 1;
+                }
+                if (leader) {
+                    runBatch(queryKey, batch, page, fetcher, concurrent && !batch.closed);
+                } else {
+                    batch.done.await();
+                }
+                if (null != batch.error) {
+                    // 执行请求的线程被取消，自己没有被取消时重新发起一次
+                    if (!leader && batch.cancelled && !retried && !Thread.currentThread().isInterrupted()) {
+                        retried = true;
+                        continue;
+                    }
+                    throw batch.error;
+                }
+                final int offset = startPosition - batch.start;
+                page.setItems(slice(batch.result, offset, requestSize));
+                page.setEndOfData(batch.endOfData
+                        && (null == batch.result || offset + requestSize >= batch.result.size()));
+                return;
+            }
+        } finally {
+            addActive(queryKey, -1);
+        }
+    }
+
+    private synchronized void addActive(String queryKey, int delta) {
+        Integer count = mActiveCounts.get(queryKey);
+        final int next = (null == count ? 0 : count) + delta;
+        if (next > 0) {
+            mActiveCounts.put(queryKey, next);
+        } else {
+            mActiveCounts.remove(queryKey);
+        }
+    }
+
+    /**
+     * 查找可以并入的批次：等待窗口中的相邻或重叠批次，或范围已包含该请求的进行中批次
+     */
+    private Batch<?> findBatch(String queryKey, int start, int size) {
+        List<Batch<?>> batches = mBatches.get(queryKey);
+        if (null == batches) {
+            return null;
+        }
+        final int end = start + size;
+        for (Batch<?> batch : batches) {
+            if (batch.closed) {
+                if (start >= batch.start && end <= batch.end) {
+                    return batch;
+                }
+            } else if (start <= batch.end && end >= batch.start
+                    && Math.max(end, batch.end) - Math.min(start, batch.start) <= mMaxBatchSize) {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param wait 同一查询有其他请求在进行，等待一个窗口以便它们的后续请求并入
+     */
+    private <T> void runBatch(String queryKey, Batch<T> batch, Page<T> page, RangeFetcher<T> fetcher, boolean wait) {
+        boolean interrupted = false;
+        if (wait) {
+            try {
+                Thread.sleep(mBatchWindow);
+            } catch (InterruptedException e) {
+                // 其他请求已并入本批次，仍需完成请求
+                interrupted = true;
+            }
+        }
+        synchronized (this) {
+            batch.closed = true;
+        }
+        countExecute();
+        try {
+            Page<T> range = new Page<T>(page.getKind(), page.getGeneration(), batch.start, batch.end - batch.start);
+            batch.result = fetcher.fetch(range);
+            batch.endOfData = range.isEndOfData();
+        } catch (Exception e) {
+            batch.cancelled = interrupted || e instanceof InterruptedIOException || e instanceof InterruptedException
+                    || Thread.currentThread().isInterrupted();
+            batch.error = e;
+        } finally {
+            synchronized (this) {
+                List<Batch<?>> batches = mBatches.get(queryKey);
+                batches.remove(batch);
+                if (batches.isEmpty()) {
+                    mBatches.remove(queryKey);
+                }
+            }
+            batch.done.countDown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <T> List<T> slice(List<T> items, int offset, int size) {
+        if (null == items) {
+            return null;
+        }
+        if (0 == offset && items.size() <= size) {
+            return items;
+        }
+        final int from = Math.min(offset, items.size());
+        final int to = Math.min(offset + size, items.size());
+        return new ArrayList<T>(items.subList(from, to));
+    }
+
+    private static <T> T getResult(FutureTask<T> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            InterruptedIOException ie = new InterruptedIOException();
+            ie.initCause(e);
+            Thread.currentThread().interrupt();
+            throw ie;
+        }
+    }
+
+    private synchronized void countRequest() {
+        mRequestCount++;
+    }
+
+    private synchronized void countExecute() {
+        mExecuteCount++;
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+
+    /**
+     * 执行偏移分页请求
+     */
+    public interface RangeFetcher<T> {
+        /**
+         * @param range 合并后的起始位置和项数，数据源没有更多时调用{@link Page#setEndOfData(boolean)}
+         * @return 数据
+         */
+        public List<T> fetch(Page<T> range) throws Exception;
+    }
+
+    private static class Batch<T> {
+        /**
+         * 合并后的范围，窗口关闭前受RequestCoalescer.this保护
+         */
+        int start;
+        int end;
+        /**
+         * 窗口已关闭，范围不再扩大，受RequestCoalescer.this保护
+         */
+        boolean closed;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile List<T> result;
+        volatile boolean endOfData;
+        volatile Exception error;
+        /**
+         * 失败是因为执行请求的线程被取消
+         */
+        volatile boolean cancelled;
+
+        Batch(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.zhangls.paging.listview;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+/**
+ * 加载失败后的重试策略：指数退避加随机抖动，超过最大次数后放弃。
+ * <p>随机抖动使同时失败的多个列表错开重试时间，避免服务恢复时被集中请求。默认只重试网络错误（{@link IOException}），
+ * 需要时重写{@link #isRetryable(Exception)}。
+ *
+ * @version 1
+ */
+public class RetryPolicy {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认最多重试次数
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    /**
+     * 默认首次重试的等待时间（毫秒）
+     */
+    public static final int DEFAULT_BASE_DELAY = 1000;
+    /**
+     * 默认最长等待时间（毫秒）
+     */
+    public static final int DEFAULT_MAX_DELAY = 60 * 1000;
+    /**
+     * 默认随机抖动占等待时间的比例
+     */
+    public static final float DEFAULT_JITTER = 0.5f;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final int mMaxAttempts;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final float mJitter;
+    private final Random mRandom = new Random();
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_JITTER);
+    }
+
+    /**
+     * @param maxAttempts 最多重试次数
+     * @param baseDelay   首次重试的等待时间（毫秒），之后每次加倍
+     * @param maxDelay    最长等待时间（毫秒）
+     * @param jitter      随机抖动占等待时间的比例，0到1之间
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay, float jitter) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelay = Math.max(1, baseDelay);
+        mMaxDelay = Math.max(mBaseDelay, maxDelay);
+        mJitter = Math.max(0f, Math.min(1f, jitter));
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 计算下一次重试前的等待时间
+     *
+     * @param attempt 已经重试的次数
+     * @param error   本次失败的原因
+     * @return 等待时间（毫秒），小于0表示不再重试
+     */
+    public long getRetryDelay(int attempt, Exception error) {
+        if (attempt >= mMaxAttempts || !isRetryable(error)) {
+            return -1;
+        }
+        long delay = mMaxDelay;
+        if (attempt < 31 && mBaseDelay << attempt < mMaxDelay) {
+            delay = mBaseDelay << attempt;
+        }
+        // 在[delay * (1 - jitter), delay]之间随机取值
+        return delay - (long) (delay * mJitter * mRandom.nextFloat());
+    }
+
+    /**
+     * 失败是否可以重试。默认只重试非取消的{@link IOException}。
+     *
+     * @param error 失败的原因
+     * @return 是否可以重试
+     */
+    protected boolean isRetryable(Exception error) {
+        return error instanceof IOException && !(error instanceof InterruptedIOException);
+    }
+}
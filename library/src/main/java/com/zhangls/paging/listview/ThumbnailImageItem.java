@@ -0,0 +1,18 @@
+package com.zhangls.paging.listview;
+
+/**
+ * 提供低分辨率版本的图片列表项。{@link ImageListAdapter#setThumbnailOnFling(boolean)}开启后，快速滑动时加载缩略图，
+ * 停止后再替换为原图。
+ *
+ * @version 1
+ */
+public interface ThumbnailImageItem extends UrlImageItem {
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 返回第index张图片的缩略图地址，如在原图地址上附加尺寸参数。返回null时缩小解码原图地址的图片。
+     */
+    public String getThumbnailUrl(int index);
+}
@@ -0,0 +1,30 @@
+package com.zhangls.paging.listview;
+
+import android.widget.ImageView;
+
+/**
+ * 图片来自URL的列表项。{@link ImageListAdapter}设置了{@link ImagePipeline}时，由框架负责这类列表项图片的下载、
+ * 解码、缓存和取消，{@link #loadImages()}和{@link #cancelLoadImages()}不会再被调用。
+ *
+ * @version 1
+ */
+public interface UrlImageItem extends ImageItem {
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 返回该列表项中需要加载的图片数量
+     */
+    public int getImageCount();
+
+    /**
+     * 返回第index张图片的地址，返回null表示该位置不显示图片
+     */
+    public String getImageUrl(int index);
+
+    /**
+     * 返回显示第index张图片的ImageView，解码时会按其尺寸缩小图片
+     */
+    public ImageView getImageView(int index);
+}
@@ -0,0 +1,174 @@
+package com.zhangls.paging.listview;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 记录每个holder最近一次绑定的位置、版本号，以及当前在屏幕上的holder。
+ * <p>按holder的对象标识（而非equals）索引，绑定、重新绑定、移入回收堆都是O(1)；在屏幕上的holder保存在一个数组中，
+ * 移出时与末尾交换，遍历时只会访问在屏幕上的行，且每个holder只出现一次。
+ * <p>不在屏幕上的holder只用于跳过重复绑定，总数超过上限时会被丢弃（下次使用时重新绑定），记录的数量因此有界。
+ * 只在UI线程访问。
+ *
+ * @version 1
+ */
+class VisibleHolderRegistry {
+    // ==========================================================================
+    // Constants
+    // ==========================================================================
+    /**
+     * 默认最多记录的holder数
+     */
+    static final int DEFAULT_MAX_SIZE = 128;
+
+    // ==========================================================================
+    // Fields
+    // ==========================================================================
+    private final int mMaxSize;
+    private final Map<ImageItem, Entry> mEntries = new IdentityHashMap<ImageItem, Entry>();
+    private final List<Entry> mVisible = new ArrayList<Entry>();
+
+    // ==========================================================================
+    // Constructors
+    // ==========================================================================
+    VisibleHolderRegistry() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    VisibleHolderRegistry(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    // ==========================================================================
+    // Getters
+    // ==========================================================================
+
+    /**
+     * 获取holder的绑定记录
+     *
+     * @return 绑定记录，未绑定或已被丢弃时返回null
+     */
+    Entry get(ImageItem holder) {
+        return mEntries.get(holder);
+    }
+
+    /**
+     * 获取记录的holder总数，包括不在屏幕上的
+     */
+    int size() {
+        return mEntries.size();
+    }
+
+    int getVisibleCount() {
+        return mVisible.size();
+    }
+
+    Entry getVisible(int index) {
+        return mVisible.get(index);
+    }
+
+    // ==========================================================================
+    // Methods
+    // ==========================================================================
+
+    /**
+     * 记录holder绑定到某位置，并标记为在屏幕上
+     */
+    Entry bind(ImageItem holder, int position, int version) {
+        Entry entry = mEntries.get(holder);
+        if (null == entry) {
+            if (mEntries.size() >= mMaxSize) {
+                trimInvisible();
+            }
+            entry = new Entry(holder);
+            mEntries.put(holder, entry);
+        }
+        entry.position = position;
+        entry.version = version;
+        entry.imageCancelled = false;
+        show(entry);
+        return entry;
+    }
+
+    /**
+     * 标记为在屏幕上，如跳过重复绑定时
+     */
+    void show(Entry entry) {
+        if (entry.visibleIndex < 0) {
+            entry.visibleIndex = mVisible.size();
+            mVisible.add(entry);
+        }
+    }
+
+    /**
+     * holder移入回收堆，图片加载已被取消
+     */
+    void scrap(ImageItem holder) {
+        Entry entry = mEntries.get(holder);
+        if (null != entry) {
+            hide(entry);
+            entry.imageCancelled = true;
+        }
+    }
+
+    /**
+     * 删除holder的记录，下次使用时一定会重新绑定
+     */
+    void forget(ImageItem holder) {
+        Entry entry = mEntries.remove(holder);
+        if (null != entry) {
+            hide(entry);
+        }
+    }
+
+    private void hide(Entry entry) {
+        final int index = entry.visibleIndex;
+        if (index < 0) {
+            return;
+        }
+        final int last = mVisible.size() - 1;
+        if (index != last) {
+            Entry moved = mVisible.get(last);
+            mVisible.set(index, moved);
+            moved.visibleIndex = index;
+        }
+        mVisible.remove(last);
+        entry.visibleIndex = -1;
+    }
+
+    /**
+     * 丢弃不在屏幕上的holder的记录
+     */
+    private void trimInvisible() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().visibleIndex < 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // ==========================================================================
+    // Inner/Nested Classes
+    // ==========================================================================
+    static class Entry {
+        final ImageItem holder;
+        int position = -1;
+        int version;
+        /**
+         * 进入回收堆时图片加载被取消，跳过重新绑定时需要重新加载
+         */
+        boolean imageCancelled;
+        /**
+         * 在屏幕上的holder数组中的下标，不在屏幕上时为-1
+         */
+        int visibleIndex = -1;
+
+        Entry(ImageItem holder) {
+            this.holder = holder;
+        }
+    }
+}